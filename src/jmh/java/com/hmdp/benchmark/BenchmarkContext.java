@@ -0,0 +1,127 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.config.RedisConfig;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheRefresher;
+import com.hmdp.utils.HotKeyDetector;
+import com.hmdp.utils.LuaScriptRegistry;
+import com.hmdp.utils.RedisBloomFilter;
+import com.hmdp.utils.RedisIdWorker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 基准测试使用的精简spring上下文：只包含redis相关组件，不连接数据库
+ * 默认在随机端口启动嵌入式redis；指定 -Dbench.redis.host 时改为连接该redis
+ */
+public class BenchmarkContext implements AutoCloseable {
+
+    private final RedisServer redisServer;
+
+    private final AnnotationConfigApplicationContext context;
+
+    private BenchmarkContext(RedisServer redisServer, AnnotationConfigApplicationContext context) {
+        this.redisServer = redisServer;
+        this.context = context;
+    }
+
+    /**
+     * 启动上下文
+     * @param properties 覆盖的配置项，如 hmdp.cache.codec.type
+     * @return
+     */
+    public static BenchmarkContext start(Map<String, Object> properties) throws IOException {
+        String host = System.getProperty("bench.redis.host");
+        int port;
+        RedisServer redisServer = null;
+        if (host == null) {
+            host = "127.0.0.1";
+            port = freePort();
+            redisServer = new RedisServer(port);
+            redisServer.start();
+        } else {
+            port = Integer.getInteger("bench.redis.port", 6379);
+        }
+        Map<String, Object> values = new HashMap<>(properties);
+        values.put("bench.redis.host", host);
+        values.put("bench.redis.port", port);
+
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", values));
+        context.register(RedisBeans.class, RedisConfig.class, LuaScriptRegistry.class, RedisIdWorker.class,
+                RedisBloomFilter.class, CacheRefresher.class, HotKeyDetector.class, CacheClient.class);
+        try {
+            context.refresh();
+        } catch (RuntimeException e) {
+            if (redisServer != null) {
+                redisServer.stop();
+            }
+            throw e;
+        }
+        return new BenchmarkContext(redisServer, context);
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    public StringRedisTemplate redis() {
+        return context.getBean(StringRedisTemplate.class);
+    }
+
+    @Override
+    public void close() throws IOException {
+        context.close();
+        if (redisServer != null) {
+            redisServer.stop();
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * 替代spring boot自动配置的redis连接和监控组件
+     */
+    static class RedisBeans {
+
+        @Bean
+        public static PropertySourcesPlaceholderConfigurer propertySourcesPlaceholderConfigurer() {
+            return new PropertySourcesPlaceholderConfigurer();
+        }
+
+        @Bean
+        public LettuceConnectionFactory redisConnectionFactory(
+                @Value("${bench.redis.host}") String host,
+                @Value("${bench.redis.port}") int port) {
+            return new LettuceConnectionFactory(new RedisStandaloneConfiguration(host, port));
+        }
+
+        @Bean
+        public StringRedisTemplate stringRedisTemplate(LettuceConnectionFactory connectionFactory) {
+            return new StringRedisTemplate(connectionFactory);
+        }
+
+        @Bean
+        public MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.utils.CacheClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * CacheClient各查询策略在缓存命中时的吞吐：local=true 主要命中一级缓存，local=false 每次读取redis并解码
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class CacheClientBenchmark {
+
+    private static final String KEY_PREFIX = "bench:shop:";
+
+    @Param({"passThrough", "mutex", "singleFlight", "logicalExpire", "earlyExpire"})
+    private String strategy;
+
+    @Param({"json", "binary"})
+    private String codecType;
+
+    @Param({"true", "false"})
+    private String local;
+
+    @Param({"1000"})
+    private int keys;
+
+    private BenchmarkContext context;
+
+    private CacheClient cacheClient;
+
+    private final Function<Long, Shop> dbFallback = BenchmarkData::shop;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("hmdp.cache.codec.type", codecType);
+        properties.put("hmdp.cache.local.enabled", local);
+        // 热点副本会绕过local=false的设置，这里关闭热点探测以便只比较查询策略
+        properties.put("hmdp.cache.hot-key.enabled", "false");
+        context = BenchmarkContext.start(properties);
+        context.redis().getConnectionFactory().getConnection().serverCommands().flushAll();
+        cacheClient = context.getBean(CacheClient.class);
+
+        // 预先写入缓存，测量阶段只走命中路径
+        if ("logicalExpire".equals(strategy)) {
+            for (long id = 1; id <= keys; id++) {
+                cacheClient.setWithLogicalExpire(KEY_PREFIX + id, BenchmarkData.shop(id), 30L, TimeUnit.MINUTES);
+            }
+        } else {
+            List<Long> ids = new ArrayList<>(keys);
+            for (long id = 1; id <= keys; id++) {
+                ids.add(id);
+            }
+            for (Long id : ids) {
+                query(id);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        context.close();
+    }
+
+    @Benchmark
+    public Shop query() {
+        return query(ThreadLocalRandom.current().nextLong(keys) + 1);
+    }
+
+    private Shop query(Long id) {
+        switch (strategy) {
+            case "mutex":
+                return cacheClient.queryWithMutex(KEY_PREFIX, id, Shop.class, dbFallback, 30L, TimeUnit.MINUTES);
+            case "singleFlight":
+                return cacheClient.queryWithSingleFlight(KEY_PREFIX, id, Shop.class, dbFallback, 30L, TimeUnit.MINUTES);
+            case "logicalExpire":
+                return cacheClient.queryWithLogicalExpire(KEY_PREFIX, id, Shop.class, dbFallback, 30L, TimeUnit.MINUTES);
+            case "earlyExpire":
+                return cacheClient.queryWithEarlyExpire(KEY_PREFIX, id, Shop.class, dbFallback, 30L, TimeUnit.MINUTES);
+            default:
+                return cacheClient.queryWithPassThrough(KEY_PREFIX, id, Shop.class, dbFallback, 30L, TimeUnit.MINUTES);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.utils.codec.BinaryCacheCodec;
+import com.hmdp.utils.codec.CacheCodec;
+import com.hmdp.utils.codec.CacheEntry;
+import com.hmdp.utils.codec.JsonCacheCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存值编解码的耗时，不访问redis
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheCodecBenchmark {
+
+    @Param({"json", "binary"})
+    private String codecType;
+
+    private CacheCodec codec;
+
+    private Shop shop;
+
+    private byte[] encoded;
+
+    private byte[] encodedWithExpire;
+
+    @Setup
+    public void setup() {
+        codec = "binary".equals(codecType) ? new BinaryCacheCodec(1024) : new JsonCacheCodec();
+        shop = BenchmarkData.shop(1L);
+        encoded = codec.encode(shop);
+        encodedWithExpire = codec.encodeWithExpire(shop, System.currentTimeMillis() + 60_000L, 20L);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return codec.encode(shop);
+    }
+
+    @Benchmark
+    public Shop decode() {
+        return codec.decode(encoded, Shop.class);
+    }
+
+    @Benchmark
+    public byte[] encodeWithExpire() {
+        return codec.encodeWithExpire(shop, System.currentTimeMillis() + 60_000L, 20L);
+    }
+
+    @Benchmark
+    public CacheEntry<Shop> decodeWithExpire() {
+        return codec.decodeWithExpire(encodedWithExpire, Shop.class);
+    }
+}
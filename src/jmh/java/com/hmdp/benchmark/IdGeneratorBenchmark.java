@@ -0,0 +1,73 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.utils.IdGenerator;
+import com.hmdp.utils.LuaScriptRegistry;
+import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SnowflakeIdGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 全局唯一id的生成吞吐：redis 每次INCR，segment 号段模式，snowflake 本地生成
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class IdGeneratorBenchmark {
+
+    @Param({"redis", "segment", "snowflake"})
+    private String generator;
+
+    private BenchmarkContext context;
+
+    private IdGenerator idGenerator;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        context = BenchmarkContext.start(Collections.emptyMap());
+        StringRedisTemplate redis = context.redis();
+        switch (generator) {
+            case "segment":
+                idGenerator = new RedisIdWorker(redis, true, 1000, 0.8);
+                break;
+            case "snowflake":
+                idGenerator = new SnowflakeIdGenerator(redis, context.getBean(LuaScriptRegistry.class), 30000, 5, 1000);
+                break;
+            default:
+                idGenerator = new RedisIdWorker(redis, false, 1000, 0.8);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (idGenerator instanceof AutoCloseable) {
+            ((AutoCloseable) idGenerator).close();
+        }
+        context.close();
+    }
+
+    @Benchmark
+    public long nextId() {
+        return idGenerator.nextId("order");
+    }
+}
@@ -0,0 +1,67 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.utils.LuaScriptRegistry;
+import com.hmdp.utils.SimpleRedisLock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SimpleRedisLock 加锁+解锁一次的耗时：keys=1 时所有线程争抢同一把锁，否则按用户分散
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class RedisLockBenchmark {
+
+    @Param({"1", "1000"})
+    private int keys;
+
+    private BenchmarkContext context;
+
+    private SimpleRedisLock[] locks;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        context = BenchmarkContext.start(Collections.emptyMap());
+        LuaScriptRegistry luaScripts = context.getBean(LuaScriptRegistry.class);
+        locks = new SimpleRedisLock[keys];
+        for (int i = 0; i < keys; i++) {
+            locks[i] = new SimpleRedisLock("order:" + i, context.redis(), luaScripts);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        context.close();
+    }
+
+    @Benchmark
+    public boolean lockAndUnlock() {
+        SimpleRedisLock lock = locks[ThreadLocalRandom.current().nextInt(keys)];
+        boolean locked = lock.tryLock(10);
+        if (locked) {
+            lock.unlock();
+        }
+        return locked;
+    }
+}
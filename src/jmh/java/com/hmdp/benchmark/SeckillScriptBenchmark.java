@@ -0,0 +1,83 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.utils.LuaScriptRegistry;
+import com.hmdp.utils.SeckillStockShards;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_STATUS_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_STREAM;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_WINDOW_KEY;
+
+/**
+ * seckill.lua 的执行耗时：库存充足、每次都是新用户，即下单成功的完整路径（校验窗口、扣库存、去重、XADD）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class SeckillScriptBenchmark {
+
+    private static final String VOUCHER_ID = "1";
+
+    private BenchmarkContext context;
+
+    private LuaScriptRegistry luaScripts;
+
+    private final AtomicLong userIds = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        context = BenchmarkContext.start(Collections.emptyMap());
+        luaScripts = context.getBean(LuaScriptRegistry.class);
+    }
+
+    /**
+     * 每轮重置库存并清理上一轮的订单，避免stream和集合无限增长影响结果
+     */
+    @Setup(Level.Iteration)
+    public void resetVoucher() {
+        StringRedisTemplate redis = context.redis();
+        redis.delete(SECKILL_ORDER_STREAM);
+        redis.delete(SECKILL_ORDER_KEY + VOUCHER_ID);
+        redis.delete(SECKILL_ORDER_STATUS_KEY + VOUCHER_ID);
+        redis.opsForValue().set(SECKILL_STOCK_KEY + VOUCHER_ID, String.valueOf(Integer.MAX_VALUE));
+        LocalDateTime now = LocalDateTime.now();
+        redis.opsForHash().putAll(SECKILL_WINDOW_KEY + VOUCHER_ID,
+                SeckillStockShards.window(now.minusHours(1), now.plusHours(1)));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        context.close();
+    }
+
+    @Benchmark
+    public Long seckill() {
+        long userId = userIds.incrementAndGet();
+        return luaScripts.execute("seckill", Long.class, Collections.emptyList(),
+                VOUCHER_ID, String.valueOf(userId), String.valueOf(userId));
+    }
+}
@@ -0,0 +1,165 @@
+package com.hmdp.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * 把 db/hmdp.sql（MySQL导出的脚本）转换为H2 MySQL模式可执行的语句并执行
+ * 1.去掉注释、SET语句，按不在字符串内的分号拆分语句
+ * 2.把MySQL的反斜杠转义改写为标准SQL转义
+ * 3.去掉建表语句中H2不支持的字符集、注释、表选项等
+ */
+final class MysqlScriptLoader {
+
+    private static final Pattern[] DDL_REMOVALS = {
+            Pattern.compile("\\s+CHARACTER SET\\s*=?\\s*\\w+", Pattern.CASE_INSENSITIVE),
+            Pattern.compile("\\s+COLLATE\\s*=?\\s*\\w+", Pattern.CASE_INSENSITIVE),
+            Pattern.compile("\\s+COMMENT\\s*=?\\s*'(?:[^']|'')*'", Pattern.CASE_INSENSITIVE),
+            Pattern.compile("\\s+USING BTREE", Pattern.CASE_INSENSITIVE),
+            Pattern.compile("\\s+UNSIGNED|\\s+ZEROFILL", Pattern.CASE_INSENSITIVE),
+            // 表选项：ENGINE = InnoDB AUTO_INCREMENT = 23 ROW_FORMAT = Compact
+            Pattern.compile("\\)\\s*ENGINE\\s*=.*$", Pattern.CASE_INSENSITIVE | Pattern.DOTALL)
+    };
+
+    private MysqlScriptLoader() {
+    }
+
+    /**
+     * 执行类路径下的MySQL脚本
+     * @param connection
+     * @param resource 如 db/hmdp.sql
+     * @return 执行的语句数
+     */
+    static int load(Connection connection, String resource) throws IOException, SQLException {
+        String script;
+        try (InputStream in = MysqlScriptLoader.class.getClassLoader().getResourceAsStream(resource)) {
+            if (in == null) {
+                throw new IOException("找不到脚本：" + resource);
+            }
+            script = new String(readAll(in), StandardCharsets.UTF_8);
+        }
+        int count = 0;
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : split(script)) {
+                String upper = sql.toUpperCase();
+                if (upper.startsWith("SET ")) {
+                    continue;
+                }
+                if (upper.startsWith("CREATE TABLE")) {
+                    sql = sanitizeDdl(sql);
+                }
+                try {
+                    statement.execute(sql);
+                } catch (SQLException e) {
+                    throw new SQLException("执行失败：" + abbreviate(sql), e);
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static String sanitizeDdl(String sql) {
+        for (Pattern pattern : DDL_REMOVALS) {
+            String replacement = pattern.pattern().startsWith("\\)") ? ")" : "";
+            sql = pattern.matcher(sql).replaceAll(replacement);
+        }
+        return sql;
+    }
+
+    /**
+     * 拆分语句，同时去掉注释并改写字符串内的转义
+     */
+    static List<String> split(String script) {
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean inString = false;
+        int length = script.length();
+        for (int i = 0; i < length; i++) {
+            char c = script.charAt(i);
+            char next = i + 1 < length ? script.charAt(i + 1) : 0;
+            if (inString) {
+                if (c == '\\') {
+                    // MySQL转义：\' \" \\ \n 等
+                    i++;
+                    switch (next) {
+                        case '\'':
+                            current.append("''");
+                            break;
+                        case 'n':
+                            current.append('\n');
+                            break;
+                        case 'r':
+                            current.append('\r');
+                            break;
+                        case 't':
+                            current.append('\t');
+                            break;
+                        case '0':
+                            break;
+                        default:
+                            current.append(next);
+                    }
+                } else if (c == '\'' && next == '\'') {
+                    current.append("''");
+                    i++;
+                } else {
+                    if (c == '\'') {
+                        inString = false;
+                    }
+                    current.append(c);
+                }
+                continue;
+            }
+            if (c == '-' && next == '-') {
+                i = skipTo(script, i, "\n");
+            } else if (c == '/' && next == '*') {
+                i = skipTo(script, i, "*/");
+            } else if (c == ';') {
+                addStatement(statements, current);
+            } else {
+                if (c == '\'') {
+                    inString = true;
+                }
+                current.append(c);
+            }
+        }
+        addStatement(statements, current);
+        return statements;
+    }
+
+    private static int skipTo(String script, int from, String end) {
+        int index = script.indexOf(end, from + 2);
+        return index < 0 ? script.length() : index + end.length() - 1;
+    }
+
+    private static void addStatement(List<String> statements, StringBuilder current) {
+        String sql = current.toString().trim();
+        if (!sql.isEmpty()) {
+            statements.add(sql);
+        }
+        current.setLength(0);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static String abbreviate(String sql) {
+        return sql.length() > 200 ? sql.substring(0, 200) + "..." : sql;
+    }
+}
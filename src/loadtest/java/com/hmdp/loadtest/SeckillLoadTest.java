@@ -0,0 +1,270 @@
+package com.hmdp.loadtest;
+
+import com.hmdp.controller.VoucherController;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Voucher;
+import com.hmdp.hmdpApplication;
+import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.utils.SeckillStockShards;
+import com.hmdp.utils.UserHolder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.core.JdbcTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+
+/**
+ * 秒杀压测：在嵌入式redis和H2（MySQL模式，加载db/hmdp.sql）上启动应用，新增一张秒杀券后并发下单
+ * 输出吞吐、延迟分位数、超卖与一人多单检查，以及数据库订单追上redis所用的时间
+ * 运行：mvn -P load-test verify -Dloadtest.args="--loadtest.users=5000 --hmdp.seckill.stock-shards=4"
+ * 参数即spring配置项，loadtest.* 见 application-loadtest.yaml；传入 --spring.redis.host 时改为使用该redis
+ */
+public class SeckillLoadTest {
+
+    private static final String DB_URL = "jdbc:h2:mem:hmdp;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    public static void main(String[] args) throws Exception {
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        RedisServer redisServer = null;
+        if (arguments.stream().noneMatch(arg -> arg.startsWith("--spring.redis.host="))) {
+            int port = freePort();
+            redisServer = new RedisServer(port);
+            redisServer.start();
+            arguments.add("--spring.redis.host=127.0.0.1");
+            arguments.add("--spring.redis.port=" + port);
+        }
+        arguments.add("--spring.datasource.url=" + DB_URL);
+        // 随机端口，避免与本机运行的应用冲突
+        if (arguments.stream().noneMatch(arg -> arg.startsWith("--server.port="))) {
+            arguments.add("--server.port=0");
+        }
+
+        // 1.建表并导入初始数据，保持一个连接使内存库在应用启动前不被关闭
+        int exitCode;
+        try (Connection keepAlive = DriverManager.getConnection(DB_URL, "sa", "")) {
+            int statements = MysqlScriptLoader.load(keepAlive, "db/hmdp.sql");
+            System.out.printf("已导入 db/hmdp.sql，执行语句：%d%n", statements);
+
+            // 2.启动应用
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(hmdpApplication.class)
+                    .profiles("loadtest")
+                    .run(arguments.toArray(new String[0]));
+            try {
+                exitCode = new SeckillLoadTest().run(context) ? 0 : 1;
+            } finally {
+                context.close();
+            }
+        } finally {
+            if (redisServer != null) {
+                redisServer.stop();
+            }
+        }
+        System.exit(exitCode);
+    }
+
+    /**
+     * 执行压测并打印报告
+     * @param context
+     * @return 所有检查是否通过
+     */
+    private boolean run(ConfigurableApplicationContext context) throws InterruptedException {
+        Environment env = context.getEnvironment();
+        int users = env.getProperty("loadtest.users", Integer.class, 2000);
+        int requestsPerUser = env.getProperty("loadtest.requests-per-user", Integer.class, 2);
+        int threads = env.getProperty("loadtest.threads", Integer.class, 200);
+        int stock = env.getProperty("loadtest.stock", Integer.class, 500);
+        long syncTimeoutMillis = TimeUnit.SECONDS.toMillis(env.getProperty("loadtest.sync-timeout-seconds", Long.class, 60L));
+
+        IVoucherOrderService voucherOrderService = context.getBean(IVoucherOrderService.class);
+        StringRedisTemplate stringRedisTemplate = context.getBean(StringRedisTemplate.class);
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+
+        // 3.新增秒杀券
+        Long voucherId = addSeckillVoucher(context.getBean(VoucherController.class), stock);
+        System.out.printf("秒杀券：%d，库存：%d，用户：%d，每人请求：%d，并发线程：%d%n",
+                voucherId, stock, users, requestsPerUser, threads);
+
+        // 4.打乱顺序后并发下单，同一用户的多次请求分散在整个压测过程中
+        List<Long> requests = new ArrayList<>(users * requestsPerUser);
+        for (int i = 0; i < requestsPerUser; i++) {
+            for (long userId = 1; userId <= users; userId++) {
+                requests.add(userId);
+            }
+        }
+        Collections.shuffle(requests);
+        long[] latencies = new long[requests.size()];
+        Map<String, Integer> outcomes = new ConcurrentHashMap<>();
+        Set<Long> orderIds = ConcurrentHashMap.newKeySet();
+        Map<Long, Integer> successByUser = new ConcurrentHashMap<>();
+        CountDownLatch done = new CountDownLatch(requests.size());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long begin = System.nanoTime();
+        for (int i = 0; i < requests.size(); i++) {
+            int index = i;
+            Long userId = requests.get(i);
+            executor.execute(() -> {
+                UserDTO user = new UserDTO();
+                user.setId(userId);
+                user.setNickName("user_" + userId);
+                UserHolder.saveUser(user);
+                long start = System.nanoTime();
+                try {
+                    Result result = voucherOrderService.seckillVoucher(voucherId);
+                    latencies[index] = System.nanoTime() - start;
+                    if (Boolean.TRUE.equals(result.getSuccess())) {
+                        orderIds.add((Long) result.getData());
+                        successByUser.merge(userId, 1, Integer::sum);
+                        outcomes.merge("成功", 1, Integer::sum);
+                    } else {
+                        outcomes.merge(result.getErrorMsg(), 1, Integer::sum);
+                    }
+                } catch (Exception e) {
+                    latencies[index] = System.nanoTime() - start;
+                    outcomes.merge("异常：" + e.getClass().getSimpleName(), 1, Integer::sum);
+                } finally {
+                    UserHolder.removeUser();
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        long elapsedNanos = System.nanoTime() - begin;
+        long requestsDoneAt = System.currentTimeMillis();
+        executor.shutdown();
+
+        // 5.吞吐与延迟
+        Arrays.sort(latencies);
+        System.out.printf("请求：%d，耗时：%.1fms，吞吐：%.0f req/s%n",
+                requests.size(), elapsedNanos / 1e6, requests.size() / (elapsedNanos / 1e9));
+        System.out.printf("延迟(ms) p50=%.2f p90=%.2f p99=%.2f p99.9=%.2f max=%.2f%n",
+                percentile(latencies, 0.5), percentile(latencies, 0.9), percentile(latencies, 0.99),
+                percentile(latencies, 0.999), latencies[latencies.length - 1] / 1e6);
+        System.out.println("结果：" + new TreeMap<>(outcomes));
+
+        // 6.redis侧检查：不超卖、一人一单、订单id不重复
+        int success = outcomes.getOrDefault("成功", 0);
+        boolean passed = true;
+        passed &= check("成功数不超过库存", success <= stock, success + " <= " + stock);
+        passed &= check("每个用户最多成功一次",
+                successByUser.values().stream().allMatch(count -> count == 1), successByUser.size() + "个用户成功");
+        passed &= check("订单id不重复", orderIds.size() == success, orderIds.size() + " == " + success);
+        SeckillStockShards stockShards = context.getBean(SeckillStockShards.class);
+        int redisStock = redisStock(stringRedisTemplate, stockShards, voucherId);
+        long redisOrders = redisOrders(stringRedisTemplate, stockShards, voucherId);
+        passed &= check("redis库存与成功数一致", redisStock == stock - success, redisStock + " == " + (stock - success));
+        passed &= check("redis下单用户数与成功数一致", redisOrders == success, redisOrders + " == " + success);
+
+        // 7.等待异步下单完成，数据库与redis一致
+        long deadline = requestsDoneAt + syncTimeoutMillis;
+        Integer dbOrders;
+        Integer dbStock;
+        while (true) {
+            dbOrders = jdbcTemplate.queryForObject(
+                    "select count(*) from tb_voucher_order where voucher_id = ?", Integer.class, voucherId);
+            dbStock = jdbcTemplate.queryForObject(
+                    "select stock from tb_seckill_voucher where voucher_id = ?", Integer.class, voucherId);
+            if ((dbOrders != null && dbOrders == success && dbStock != null && dbStock == stock - success)
+                    || System.currentTimeMillis() > deadline) {
+                break;
+            }
+            Thread.sleep(20);
+        }
+        long syncMillis = System.currentTimeMillis() - requestsDoneAt;
+        boolean synced = dbOrders != null && dbOrders == success && dbStock != null && dbStock == stock - success;
+        passed &= check("数据库订单数与成功数一致", dbOrders != null && dbOrders == success, dbOrders + " == " + success);
+        passed &= check("数据库库存与成功数一致", dbStock != null && dbStock == stock - success, dbStock + " == " + (stock - success));
+        Integer duplicated = jdbcTemplate.queryForObject(
+                "select count(*) from (select user_id from tb_voucher_order where voucher_id = ? "
+                        + "group by user_id having count(*) > 1) t", Integer.class, voucherId);
+        passed &= check("数据库中没有一人多单", duplicated != null && duplicated == 0, duplicated + "个用户重复");
+        System.out.printf(synced ? "请求结束后%dms数据库与redis一致%n" : "请求结束%dms后数据库仍未与redis一致%n", syncMillis);
+        System.out.println(passed ? "压测检查全部通过" : "压测检查未通过");
+        return passed;
+    }
+
+    private static Long addSeckillVoucher(VoucherController voucherController, int stock) {
+        LocalDateTime now = LocalDateTime.now();
+        Voucher voucher = new Voucher();
+        voucher.setShopId(1L);
+        voucher.setTitle("压测秒杀券");
+        voucher.setSubTitle("压测");
+        voucher.setRules("压测");
+        voucher.setPayValue(8000L);
+        voucher.setActualValue(10000L);
+        voucher.setType(1);
+        voucher.setStock(stock);
+        voucher.setBeginTime(now.minusMinutes(1));
+        voucher.setEndTime(now.plusHours(1));
+        return (Long) voucherController.addSeckillVoucher(voucher).getData();
+    }
+
+    /**
+     * 未分片的券读取 seckill:stock:{id}，分片的券累加各分片库存
+     */
+    private static int redisStock(StringRedisTemplate stringRedisTemplate, SeckillStockShards stockShards, Long voucherId) {
+        int shards = stockShards.shardCount(voucherId);
+        if (shards <= 1) {
+            String stock = stringRedisTemplate.opsForValue().get(SECKILL_STOCK_KEY + voucherId);
+            return stock == null ? 0 : Integer.parseInt(stock);
+        }
+        int sum = 0;
+        for (int s = 0; s < shards; s++) {
+            String stock = stringRedisTemplate.opsForValue().get(SeckillStockShards.stockKey(voucherId, s));
+            sum += stock == null ? 0 : Integer.parseInt(stock);
+        }
+        return sum;
+    }
+
+    private static long redisOrders(StringRedisTemplate stringRedisTemplate, SeckillStockShards stockShards, Long voucherId) {
+        int shards = stockShards.shardCount(voucherId);
+        if (shards <= 1) {
+            Long size = stringRedisTemplate.opsForSet().size(SECKILL_ORDER_KEY + voucherId);
+            return size == null ? 0 : size;
+        }
+        long sum = 0;
+        for (int s = 0; s < shards; s++) {
+            Long size = stringRedisTemplate.opsForSet().size(SeckillStockShards.orderKey(voucherId, s));
+            sum += size == null ? 0 : size;
+        }
+        return sum;
+    }
+
+    private static boolean check(String name, boolean ok, String detail) {
+        System.out.printf("[%s] %s：%s%n", ok ? "通过" : "失败", name, detail);
+        return ok;
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
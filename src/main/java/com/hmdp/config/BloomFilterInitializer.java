@@ -0,0 +1,88 @@
+package com.hmdp.config;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.hmdp.service.IShopService;
+import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.RedisBloomFilter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 启动时用数据库中的全量id重建布隆过滤器，并为商铺缓存开启过滤
+ */
+@Slf4j
+@Component
+public class BloomFilterInitializer implements ApplicationRunner {
+
+    // 每次分页读取的id个数
+    private static final int PAGE_SIZE = 5000;
+
+    @Resource
+    private RedisBloomFilter bloomFilter;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private IShopService shopService;
+
+    @Resource
+    private IVoucherService voucherService;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        bloomFilter.rebuild(BLOOM_SHOP_FILTER, pagedIds(shopService));
+        cacheClient.guardWithBloomFilter(CACHE_SHOP_KEY, BLOOM_SHOP_FILTER);
+
+        // 优惠券不经过CacheClient查询，过滤器只用于秒杀下单前拦截不存在的券
+        bloomFilter.rebuild(BLOOM_VOUCHER_FILTER, pagedIds(voucherService));
+    }
+
+    /**
+     * 按主键游标分页读取全部id，避免一次性加载整张表
+     */
+    private <T> Iterable<List<Long>> pagedIds(IService<T> service) {
+        return () -> new Iterator<List<Long>>() {
+            private long lastId = 0;
+            private List<Long> next;
+            private boolean finished;
+
+            @Override
+            public boolean hasNext() {
+                if (next == null && !finished) {
+                    next = service.listObjs(new QueryWrapper<T>()
+                                    .select("id").gt("id", lastId).orderByAsc("id").last("limit " + PAGE_SIZE),
+                            id -> ((Number) id).longValue());
+                    if (next.isEmpty()) {
+                        next = null;
+                        finished = true;
+                    } else {
+                        lastId = next.get(next.size() - 1);
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public List<Long> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                List<Long> page = next;
+                next = null;
+                return page;
+            }
+        };
+    }
+}
@@ -0,0 +1,204 @@
+package com.hmdp.config;
+
+import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.extension.service.IService;
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import com.hmdp.service.IBlogService;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IShopService;
+import com.hmdp.service.IShopTypeService;
+import com.hmdp.utils.BlogRanking;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.SeckillStockShards;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 启动时预热缓存：按主键游标分页读取商铺、商铺类型、秒杀库存和博文热度，以pipeline批量写入redis
+ * ApplicationRunner执行完成后应用才会进入ACCEPTING_TRAFFIC状态，因此 /actuator/health/readiness 在预热结束后才会就绪
+ */
+@Slf4j
+@Component
+public class CacheWarmUpRunner implements ApplicationRunner {
+
+    @Resource
+    private IShopService shopService;
+
+    @Resource
+    private IShopTypeService shopTypeService;
+
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+
+    @Resource
+    private IBlogService blogService;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private BlogRanking blogRanking;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Value("${hmdp.warm-up.enabled:true}")
+    private boolean enabled;
+
+    @Value("${hmdp.warm-up.page-size:500}")
+    private int pageSize;
+
+    @Value("${hmdp.warm-up.parallelism:4}")
+    private int parallelism;
+
+    @Value("${hmdp.warm-up.time-budget-seconds:30}")
+    private long timeBudgetSeconds;
+
+    @Override
+    public void run(ApplicationArguments args) throws InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        long begin = System.currentTimeMillis();
+        long deadline = begin + TimeUnit.SECONDS.toMillis(timeBudgetSeconds);
+        AtomicInteger writePageCount = new AtomicInteger();
+        AtomicInteger index = new AtomicInteger();
+        // 有界队列，写入跟不上读取时由读取线程自己写入，内存中最多保留 parallelism * 2 页待写入的数据
+        ExecutorService writers = new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(parallelism * 2),
+                r -> new Thread(r, "cache-warm-up-" + index.incrementAndGet()),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        try {
+            // 1.商铺详情
+            int shops = forEachPage(shopService, "id", Shop::getId, deadline, page ->
+                    submit(writers, writePageCount, () -> warmUpShops(page)));
+
+            // 2.商铺类型列表，与ShopTypeServiceImpl保持同样的格式
+            List<ShopType> shopTypes = new ArrayList<>();
+            forEachPage(shopTypeService, "id", ShopType::getId, deadline, shopTypes::addAll);
+            if (!shopTypes.isEmpty()) {
+                shopTypes.sort(Comparator.comparing(ShopType::getSort, Comparator.nullsLast(Comparator.naturalOrder())));
+                stringRedisTemplate.opsForValue().set(CACHE_SHOP_TYPE_LIST_KEY, JSONUtil.toJsonStr(shopTypes));
+            }
+
+            // 3.未结束的秒杀券库存
+            int vouchers = forEachPage(seckillVoucherService, "voucher_id", SeckillVoucher::getVoucherId, deadline, page ->
+                    submit(writers, writePageCount, () -> warmUpSeckillStock(page)));
+
+            // 4.博文热度排行，点赞数包含尚未写入数据库的增量
+            int blogs = forEachPage(blogService, "id", Blog::getId, deadline, page ->
+                    submit(writers, writePageCount, () -> {
+                        blogService.fillLikes(page);
+                        blogRanking.addAll(page);
+                    }));
+
+            writers.shutdown();
+            boolean finished = writers.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            // 全部博文写入后裁剪一次热度排行
+            blogRanking.trim();
+            if (!finished || System.currentTimeMillis() > deadline) {
+                log.warn("缓存预热超过时间预算{}秒，剩余数据将在首次访问时加载", timeBudgetSeconds);
+            }
+            log.info("缓存预热完成，商铺：{}，商铺类型：{}，秒杀券：{}，博文：{}，写入批次：{}，耗时：{}ms",
+                    shops, shopTypes.size(), vouchers, blogs, writePageCount.get(), System.currentTimeMillis() - begin);
+        } finally {
+            writers.shutdownNow();
+        }
+    }
+
+    private void warmUpShops(List<Shop> shops) {
+        Map<String, Shop> values = new LinkedHashMap<>();
+        for (Shop shop : shops) {
+            values.put(CACHE_SHOP_KEY + shop.getId(), shop);
+        }
+        cacheClient.setMany(values, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 秒杀库存只在key不存在时写入，避免覆盖redis中正在扣减的库存；秒杀时间窗口以数据库为准覆盖写入
+     */
+    private void warmUpSeckillStock(List<SeckillVoucher> vouchers) {
+        LocalDateTime now = LocalDateTime.now();
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (SeckillVoucher voucher : vouchers) {
+                if (voucher.getEndTime() != null && voucher.getEndTime().isBefore(now)) {
+                    continue;
+                }
+                conn.set(SECKILL_STOCK_KEY + voucher.getVoucherId(), String.valueOf(voucher.getStock()),
+                        Expiration.persistent(), RedisStringCommands.SetOption.ifAbsent());
+                if (voucher.getBeginTime() != null && voucher.getEndTime() != null) {
+                    conn.hMSet(SECKILL_WINDOW_KEY + voucher.getVoucherId(),
+                            SeckillStockShards.window(voucher.getBeginTime(), voucher.getEndTime()));
+                }
+            }
+            return null;
+        });
+    }
+
+    private void submit(ExecutorService writers, AtomicInteger writePageCount, Runnable task) {
+        writers.execute(() -> {
+            try {
+                task.run();
+                writePageCount.incrementAndGet();
+            } catch (Exception e) {
+                log.error("缓存预热写入失败", e);
+            }
+        });
+    }
+
+    /**
+     * 按主键游标分页读取整张表，超过截止时间后停止
+     * @return 读取的行数
+     */
+    private <T> int forEachPage(IService<T> service, String idColumn, Function<T, Long> idGetter,
+                                long deadline, Consumer<List<T>> consumer) {
+        long lastId = 0;
+        int count = 0;
+        while (System.currentTimeMillis() < deadline) {
+            List<T> page = service.query()
+                    .gt(idColumn, lastId)
+                    .orderByAsc(idColumn)
+                    .last("limit " + pageSize)
+                    .list();
+            if (page.isEmpty()) {
+                break;
+            }
+            consumer.accept(page);
+            count += page.size();
+            lastId = idGetter.apply(page.get(page.size() - 1));
+            if (page.size() < pageSize) {
+                break;
+            }
+        }
+        return count;
+    }
+}
@@ -1,9 +1,10 @@
 package com.hmdp.config;
 
 import com.hmdp.utils.LoginInterceptor;
+import com.hmdp.utils.LoginSessions;
 import com.hmdp.utils.RefreshTokenInterceptor;
+import com.hmdp.utils.SignedTokens;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
@@ -18,7 +19,10 @@ import javax.annotation.Resource;
 public class MvcConfig implements WebMvcConfigurer {
 
     @Resource
-    private StringRedisTemplate stringRedisTemplate;
+    private LoginSessions loginSessions;
+
+    @Resource
+    private SignedTokens signedTokens;
 
     /**
      * 登录拦截器
@@ -32,14 +36,16 @@ public class MvcConfig implements WebMvcConfigurer {
                         "/voucher/**",
                         "/upload/**",
                         "/user/login",
+                        "/user/refresh",
                         "/user/code",
                         "/shop/**",
                         "/shop-type/**",
-                        "/blog/hot"
+                        "/blog/hot",
+                        "/actuator/**"
                 ).order(1);
         /**
          * 刷新token拦截器
          */
-        registry.addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate)).addPathPatterns("/**").order(0);
+        registry.addInterceptor(new RefreshTokenInterceptor(signedTokens.isEnabled() ? signedTokens : loginSessions)).addPathPatterns("/**").order(0);
     }
 }
\ No newline at end of file
@@ -0,0 +1,94 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.IdGenerator;
+import com.hmdp.utils.LuaScriptRegistry;
+import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SnowflakeIdGenerator;
+import com.hmdp.utils.codec.BinaryCacheCodec;
+import com.hmdp.utils.codec.CacheCodec;
+import com.hmdp.utils.codec.JsonCacheCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+/**
+ * Redis 相关的公共组件配置
+ */
+@Configuration
+public class RedisConfig {
+
+    /**
+     * pub/sub 监听容器，各组件在初始化时自行订阅所需的频道
+     * @param connectionFactory
+     * @return
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        return container;
+    }
+
+    /**
+     * value为原始字节的模板，供CacheClient按所选编解码器读写缓存
+     * @param connectionFactory
+     * @return
+     */
+    @Bean
+    public RedisTemplate<String, byte[]> byteRedisTemplate(RedisConnectionFactory connectionFactory) {
+        RedisTemplate<String, byte[]> template = new RedisTemplate<>();
+        template.setConnectionFactory(connectionFactory);
+        template.setKeySerializer(RedisSerializer.string());
+        template.setValueSerializer(RedisSerializer.byteArray());
+        template.setHashKeySerializer(RedisSerializer.string());
+        template.setHashValueSerializer(RedisSerializer.byteArray());
+        return template;
+    }
+
+    /**
+     * 缓存值编解码器：json 与原有数据格式兼容；binary 为紧凑二进制格式
+     * @param codec
+     * @param compressThreshold
+     * @return
+     */
+    @Bean
+    public CacheCodec cacheCodec(@Value("${hmdp.cache.codec.type:json}") String codec,
+                                 @Value("${hmdp.cache.codec.compress-threshold:1024}") int compressThreshold) {
+        if ("binary".equalsIgnoreCase(codec)) {
+            return new BinaryCacheCodec(compressThreshold);
+        }
+        return new JsonCacheCodec();
+    }
+
+    /**
+     * 全局唯一id生成器：redis 为按天自增的 RedisIdWorker；snowflake 为本地生成的雪花算法，workerId从redis租用
+     * @param type
+     * @param redisIdWorker
+     * @param stringRedisTemplate
+     * @param luaScripts
+     * @param leaseMillis
+     * @param maxBackwardMillis
+     * @param maxClockSkewMillis
+     * @return
+     */
+    @Bean
+    @Primary
+    public IdGenerator idGenerator(@Value("${hmdp.id.generator:redis}") String type,
+                                   RedisIdWorker redisIdWorker,
+                                   StringRedisTemplate stringRedisTemplate,
+                                   LuaScriptRegistry luaScripts,
+                                   @Value("${hmdp.id.snowflake.lease-millis:30000}") long leaseMillis,
+                                   @Value("${hmdp.id.snowflake.max-backward-millis:5}") long maxBackwardMillis,
+                                   @Value("${hmdp.id.snowflake.max-clock-skew-millis:1000}") long maxClockSkewMillis) {
+        if ("snowflake".equalsIgnoreCase(type)) {
+            return new SnowflakeIdGenerator(stringRedisTemplate, luaScripts, leaseMillis, maxBackwardMillis, maxClockSkewMillis);
+        }
+        return redisIdWorker;
+    }
+}
@@ -1,20 +1,32 @@
 package com.hmdp.config;
 
+import cn.hutool.core.util.StrUtil;
 import org.redisson.Redisson;
 import org.redisson.api.RedissonClient;
 import org.redisson.config.Config;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
 public class RedissonConfig {
 
+    // 与 spring.redis 使用同一个redis
+    @Value("${spring.redis.host:localhost}")
+    private String host;
+
+    @Value("${spring.redis.port:6379}")
+    private int port;
+
+    @Value("${spring.redis.password:}")
+    private String password;
+
     @Bean
     public RedissonClient redissonClient(){
         // 配置
         Config config = new Config();
-        config.useSingleServer().setAddress("redis://192.168.232.136:6379")
-                .setPassword(null);
+        config.useSingleServer().setAddress("redis://" + host + ":" + port)
+                .setPassword(StrUtil.isBlank(password) ? null : password);
         // 创建RedissonClient对象
         return Redisson.create(config);
     }
@@ -0,0 +1,71 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 秒杀准入控制配置，支持按优惠券单独配置速率
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.seckill.admission")
+public class SeckillAdmissionProperties {
+
+    /**
+     * 是否开启准入控制
+     */
+    private boolean enabled = true;
+
+    /**
+     * 本地预取桶每次从redis申请的令牌数
+     */
+    private int prefetch = 10;
+
+    /**
+     * 其他线程正在从redis申请令牌时，最多等待其结果的毫秒数
+     */
+    private long fetchWaitMillis = 20;
+
+    /**
+     * 所有秒杀请求共享的全局速率
+     */
+    private Rate global = new Rate(5000, 10000);
+
+    /**
+     * 未单独配置的优惠券使用的速率
+     */
+    private Rate defaultVoucher = new Rate(1000, 2000);
+
+    /**
+     * 按优惠券id单独配置的速率
+     */
+    private Map<Long, Rate> vouchers = new HashMap<>();
+
+    public Rate rateOf(Long voucherId) {
+        return vouchers.getOrDefault(voucherId, defaultVoucher);
+    }
+
+    @Data
+    public static class Rate {
+        /**
+         * 每秒产生的令牌数
+         */
+        private long rate;
+        /**
+         * 桶容量，即允许的突发请求数
+         */
+        private long burst;
+
+        public Rate() {
+        }
+
+        public Rate(long rate, long burst) {
+            this.rate = rate;
+            this.burst = burst;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.utils.HotKeyDetector;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+
+/**
+ * <p>
+ * 缓存管理控制器
+ * </p>
+ */
+@RestController
+@RequestMapping("/admin/cache")
+public class CacheAdminController {
+
+    @Resource
+    private HotKeyDetector hotKeyDetector;
+
+    /**
+     * 查询当前的热点key
+     * @return 热点key、窗口内访问次数估算值及被探测为热点的时间
+     */
+    @GetMapping("/hot-keys")
+    public Result queryHotKeys() {
+        return Result.ok(hotKeyDetector.hotKeys());
+    }
+}
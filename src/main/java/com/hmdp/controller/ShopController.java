@@ -6,11 +6,14 @@ import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.hmdp.service.IShopService;
+import com.hmdp.utils.RedisBloomFilter;
 import com.hmdp.utils.SystemConstants;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
 
+import static com.hmdp.utils.RedisConstants.BLOOM_SHOP_FILTER;
+
 /**
  * <p>
  * 前端控制器
@@ -26,6 +29,9 @@ public class ShopController {
     @Resource
     public IShopService shopService;
 
+    @Resource
+    private RedisBloomFilter bloomFilter;
+
     /**
      * 根据id查询商铺信息
      * @param id 商铺id
@@ -46,6 +52,8 @@ public class ShopController {
     public Result saveShop(@RequestBody Shop shop) {
         // 写入数据库
         shopService.save(shop);
+        // 加入布隆过滤器
+        bloomFilter.add(BLOOM_SHOP_FILTER, shop.getId());
         // 返回店铺id
         return Result.ok(shop.getId());
     }
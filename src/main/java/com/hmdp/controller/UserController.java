@@ -57,12 +57,25 @@ public class UserController {
 
     /**
      * 登出功能
+     * @param token 访问token
+     * @param refreshToken 刷新token，签名token模式下一并注销
      * @return 无
      */
     @PostMapping("/logout")
-    public Result logout(){
-        // TODO 实现登出功能
-        return Result.fail("功能未完成");
+    public Result logout(@RequestHeader(value = "authorization", required = false) String token,
+                         @RequestHeader(value = "refresh-token", required = false) String refreshToken){
+        // 删除或注销token，并通知所有实例
+        return userService.logout(token, refreshToken);
+    }
+
+    /**
+     * 使用刷新token换取新的访问token和刷新token，仅签名token模式可用
+     * @param refreshToken 刷新token
+     * @return 新的token
+     */
+    @PostMapping("/refresh")
+    public Result refresh(@RequestHeader(value = "refresh-token", required = false) String refreshToken){
+        return userService.refresh(refreshToken);
     }
 
     @GetMapping("/me")
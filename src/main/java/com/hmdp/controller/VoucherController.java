@@ -4,10 +4,13 @@ package com.hmdp.controller;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.Voucher;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.RedisBloomFilter;
 import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.Resource;
 
+import static com.hmdp.utils.RedisConstants.BLOOM_VOUCHER_FILTER;
+
 /**
  * <p>
  *  前端控制器
@@ -23,6 +26,9 @@ public class VoucherController {
     @Resource
     private IVoucherService voucherService;
 
+    @Resource
+    private RedisBloomFilter bloomFilter;
+
     /**
      * 新增普通券
      * @param voucher 优惠券信息
@@ -31,6 +37,8 @@ public class VoucherController {
     @PostMapping
     public Result addVoucher(@RequestBody Voucher voucher) {
         voucherService.save(voucher);
+        // 加入布隆过滤器
+        bloomFilter.add(BLOOM_VOUCHER_FILTER, voucher.getId());
         return Result.ok(voucher.getId());
     }
 
@@ -41,8 +49,24 @@ public class VoucherController {
      */
     @PostMapping("seckill")
     public Result addSeckillVoucher(@RequestBody Voucher voucher) {
-        voucherService.addSeckillVoucher(voucher);
-        return Result.ok(voucher.getId());
+        Result result = voucherService.addSeckillVoucher(voucher);
+        if (!result.getSuccess()) {
+            return result;
+        }
+        // 加入布隆过滤器
+        bloomFilter.add(BLOOM_VOUCHER_FILTER, voucher.getId());
+        return result;
+    }
+
+    /**
+     * 补充秒杀券库存
+     * @param voucherId 优惠券id
+     * @param amount 补充的数量
+     * @return
+     */
+    @PutMapping("seckill/{id}/stock")
+    public Result replenishSeckillStock(@PathVariable("id") Long voucherId, @RequestParam("amount") Integer amount) {
+        return voucherService.replenishSeckillStock(voucherId, amount);
     }
 
     /**
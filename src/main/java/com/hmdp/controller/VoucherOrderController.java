@@ -3,10 +3,13 @@ package com.hmdp.controller;
 
 import com.hmdp.dto.Result;
 import com.hmdp.service.IVoucherOrderService;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
 
 import javax.annotation.Resource;
 
@@ -34,4 +37,18 @@ public class VoucherOrderController {
     public Result seckillVoucher(@PathVariable("id") Long voucherId) {
         return voucherOrderService.seckillVoucher(voucherId);
     }
+
+    /**
+     * 查询秒杀下单结果，订单仍在排队时最多等待wait毫秒，订单写库后立即返回
+     * @param voucherId
+     * @param orderId 下单时返回的订单id
+     * @param waitMillis 最长等待时间
+     * @return
+     */
+    @GetMapping("seckill/{id}/orders/{orderId}")
+    public DeferredResult<Result> querySeckillOrder(@PathVariable("id") Long voucherId,
+                                                    @PathVariable("orderId") Long orderId,
+                                                    @RequestParam(value = "wait", required = false) Long waitMillis) {
+        return voucherOrderService.querySeckillOrder(voucherId, orderId, waitMillis);
+    }
 }
@@ -0,0 +1,12 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+public class HotKeyDTO {
+    private String key;
+    private Long estimate;
+    private LocalDateTime promotedAt;
+}
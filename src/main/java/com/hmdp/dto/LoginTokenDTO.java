@@ -0,0 +1,23 @@
+package com.hmdp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LoginTokenDTO {
+    /**
+     * 访问token，放在请求头authorization中
+     */
+    private String token;
+    /**
+     * 刷新token，访问token过期后用于换取新的token
+     */
+    private String refreshToken;
+    /**
+     * 访问token的有效期（秒）
+     */
+    private Long expiresIn;
+}
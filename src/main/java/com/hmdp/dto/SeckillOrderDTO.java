@@ -0,0 +1,17 @@
+package com.hmdp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SeckillOrderDTO {
+    private Long orderId;
+    private Long voucherId;
+    /**
+     * 订单状态：QUEUED 排队中，PERSISTED 已创建，FAILED 创建失败
+     */
+    private String status;
+}
@@ -2,6 +2,9 @@ package com.hmdp.mapper;
 
 import com.hmdp.entity.Blog;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Map;
 
 /**
  * <p>
@@ -13,4 +16,11 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface BlogMapper extends BaseMapper<Blog> {
 
+    /**
+     * 一条语句累加多篇博文的点赞数，结果不小于0
+     * @param deltas 博文id到点赞数增量
+     * @return 更新的行数
+     */
+    int incrementLiked(@Param("deltas") Map<Long, Long> deltas);
+
 }
@@ -4,6 +4,11 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.List;
+import java.util.Set;
+
 /**
  * <p>
  *  服务类
@@ -16,5 +21,9 @@ public interface IVoucherOrderService extends IService<VoucherOrder> {
 
     Result seckillVoucher(Long voucherId);
 
-    void createVoucherOrder(VoucherOrder voucherOrder);
+    boolean createVoucherOrder(VoucherOrder voucherOrder);
+
+    Set<Long> createVoucherOrders(List<VoucherOrder> voucherOrders);
+
+    DeferredResult<Result> querySeckillOrder(Long voucherId, Long orderId, Long waitMillis);
 }
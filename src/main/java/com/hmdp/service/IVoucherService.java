@@ -16,5 +16,7 @@ public interface IVoucherService extends IService<Voucher> {
 
     Result queryVoucherOfShop(Long shopId);
 
-    void addSeckillVoucher(Voucher voucher);
+    Result addSeckillVoucher(Voucher voucher);
+
+    Result replenishSeckillStock(Long voucherId, Integer amount);
 }
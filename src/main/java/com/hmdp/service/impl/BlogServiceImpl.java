@@ -1,11 +1,35 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Blog;
+import com.hmdp.entity.User;
 import com.hmdp.mapper.BlogMapper;
 import com.hmdp.service.IBlogService;
+import com.hmdp.service.IUserService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.BlogLikes;
+import com.hmdp.utils.BlogRanking;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.UserHolder;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.CACHE_USER_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_USER_TTL;
+
 /**
  * <p>
  *  服务实现类
@@ -17,4 +41,108 @@ import org.springframework.stereotype.Service;
 @Service
 public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IBlogService {
 
+    @Resource
+    private BlogLikes blogLikes;
+
+    @Resource
+    private BlogRanking blogRanking;
+
+    @Resource
+    private IUserService userService;
+
+    @Resource
+    private CacheClient cacheClient;
+
+    /**
+     * 发布博文，并加入热度排行
+     * @param blog
+     * @return 博文id
+     */
+    @Override
+    public Result saveBlog(Blog blog) {
+        // 获取登录用户
+        UserDTO user = UserHolder.getUser();
+        blog.setUserId(user.getId());
+        // 保存探店博文
+        save(blog);
+        // 创建时间由数据库生成，排行中以当前时间近似
+        if (blog.getCreateTime() == null) {
+            blog.setCreateTime(LocalDateTime.now());
+        }
+        blogRanking.add(blog);
+        // 返回id
+        return Result.ok(blog.getId());
+    }
+
+    /**
+     * 点赞或取消点赞，点赞数由BlogLikes定时批量写入数据库
+     * @param id 博文id
+     * @return
+     */
+    @Override
+    public Result likeBlog(Long id) {
+        UserDTO user = UserHolder.getUser();
+        blogLikes.toggle(id, user.getId());
+        return Result.ok();
+    }
+
+    /**
+     * 热门博文：按热度排行分页取出博文id，批量查询博文和作者
+     * @param current 页码
+     * @return
+     */
+    @Override
+    public Result queryHotBlog(Integer current) {
+        List<Long> ids = blogRanking.page(current, SystemConstants.MAX_PAGE_SIZE);
+        if (ids.isEmpty()) {
+            return Result.ok(Collections.emptyList());
+        }
+        // 批量查询博文，按排行顺序返回
+        Map<Long, Blog> blogs = listByIds(ids).stream().collect(Collectors.toMap(Blog::getId, Function.identity()));
+        List<Blog> records = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Blog blog = blogs.get(id);
+            if (blog != null) {
+                records.add(blog);
+            }
+        }
+        // 批量查询作者
+        List<Long> userIds = records.stream().map(Blog::getUserId).collect(Collectors.toList());
+        Map<Long, UserDTO> users = cacheClient.queryMany(CACHE_USER_KEY, userIds, UserDTO.class,
+                missIds -> userService.listByIds(missIds).stream()
+                        .collect(Collectors.toMap(User::getId, user -> BeanUtil.copyProperties(user, UserDTO.class))),
+                CACHE_USER_TTL, TimeUnit.MINUTES);
+        records.forEach(blog -> {
+            UserDTO user = users.get(blog.getUserId());
+            if (user != null) {
+                blog.setName(user.getNickName());
+                blog.setIcon(user.getIcon());
+            }
+        });
+        fillLikes(records);
+        return Result.ok(records);
+    }
+
+    /**
+     * 填充当前用户是否点赞，并把尚未写入数据库的增量加到点赞数上
+     * @param blogs
+     */
+    @Override
+    public void fillLikes(List<Blog> blogs) {
+        if (blogs.isEmpty()) {
+            return;
+        }
+        List<Long> ids = blogs.stream().map(Blog::getId).collect(Collectors.toList());
+        Map<Long, Long> deltas = blogLikes.pendingDeltas(ids);
+        UserDTO user = UserHolder.getUser();
+        Set<Long> liked = blogLikes.likedBy(user == null ? null : user.getId(), ids);
+        for (Blog blog : blogs) {
+            Long delta = deltas.get(blog.getId());
+            if (delta != null) {
+                int current = blog.getLiked() == null ? 0 : blog.getLiked();
+                blog.setLiked((int) Math.max(0, current + delta));
+            }
+            blog.setIsLike(liked.contains(blog.getId()));
+        }
+    }
 }
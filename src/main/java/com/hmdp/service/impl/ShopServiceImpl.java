@@ -10,6 +10,7 @@ import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheRefresher;
 import com.hmdp.utils.RedisData;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
@@ -18,8 +19,6 @@ import org.springframework.transaction.annotation.Transactional;
 import javax.annotation.Resource;
 
 import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import static com.hmdp.utils.RedisConstants.*;
@@ -35,15 +34,16 @@ import static com.hmdp.utils.RedisConstants.*;
 @Service
 public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IShopService {
 
-    // 缓存重建所用的线程池
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR= Executors.newFixedThreadPool(10);
-
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
     @Resource
     private CacheClient cacheClient;
 
+    // 全局共享的缓存重建调度器
+    @Resource
+    private CacheRefresher cacheRefresher;
+
     /**
      * 根据id查询店铺信息
      * @param id
@@ -61,8 +61,16 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
 //        if (shop == null) {
 //            return Result.fail("店铺不存在");
 //        }
+//        Shop shop = cacheClient
+//                .queryWithMutex(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+
+        // 进程内合并并发未命中，只有一个线程获取分布式锁重建缓存
         Shop shop = cacheClient
-                .queryWithMutex(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+                .queryWithSingleFlight(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
+
+        // 概率提前过期，避免同一批key同时过期（可选，与上面的单飞模式二选一）
+//        Shop shop = cacheClient
+//                .queryWithEarlyExpire(CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
 
         // 逻辑过期解决缓存击穿
 //        Shop shop = queryWithLogicalExpire(id);
@@ -269,7 +277,7 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
 
         // 4.2.获取到锁，开启独立线程，实现缓存重建
         if (isLock) {
-            CACHE_REBUILD_EXECUTOR.submit(()->{
+            boolean submitted = cacheRefresher.submit(key, ()->{
                 try {
                     saveShopToRedis(id,20L);
                 } catch (Exception e) {
@@ -279,6 +287,10 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
                     unlock(lockKey);
                 }
             });
+            if (!submitted) {
+                // 未能提交重建任务，释放锁以便后续请求重试
+                unlock(lockKey);
+            }
         }
 
         // 5.返回信息
@@ -301,8 +313,8 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         // 更新数据库
         updateById(shop);
 
-        // 删除缓存
-        stringRedisTemplate.delete(CACHE_SHOP_KEY+id);
+        // 删除缓存，同时广播通知各实例清理一级缓存
+        cacheClient.delete(CACHE_SHOP_KEY+id);
 
         return Result.ok();
     }
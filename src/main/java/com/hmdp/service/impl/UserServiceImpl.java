@@ -1,8 +1,8 @@
 package com.hmdp.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
-import cn.hutool.core.bean.copier.CopyOptions;
 import cn.hutool.core.util.RandomUtil;
+import cn.hutool.core.util.StrUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.LoginFormDTO;
 import com.hmdp.dto.Result;
@@ -10,7 +10,9 @@ import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.UserMapper;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.LoginSessions;
 import com.hmdp.utils.RegexUtils;
+import com.hmdp.utils.SignedTokens;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
@@ -18,8 +20,6 @@ import org.springframework.stereotype.Service;
 import javax.annotation.Resource;
 import javax.servlet.http.HttpSession;
 
-import java.util.HashMap;
-import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
@@ -41,6 +41,12 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private LoginSessions loginSessions;
+
+    @Resource
+    private SignedTokens signedTokens;
+
     @Override
     public Result sendCode(String phone, HttpSession session) {
         // 检验手机号
@@ -116,21 +122,45 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         }
         //用户信息存到redis中
         UserDTO userDTO = BeanUtil.copyProperties(user, UserDTO.class);
-        //这里将UserDTO中的属性转为string类型的
-        Map<String, Object> userMap = BeanUtil.beanToMap(userDTO,new HashMap<>(),
-                CopyOptions.create().setIgnoreNullValue(true)
-                        .setFieldValueEditor((fieldName,fieldValue)->fieldValue.toString())
-        );
+        //签名token模式：签发访问token和刷新token，不保存会话
+        if (signedTokens.isEnabled()) {
+            return Result.ok(signedTokens.issue(userDTO));
+        }
         //生成随机token
         String token = UUID.randomUUID().toString();
-        //将用户信息放到redis中
-        stringRedisTemplate.opsForHash().putAll(LOGIN_USER_KEY+token,userMap);
-        //设置有效期
-        stringRedisTemplate.expire(LOGIN_USER_KEY+token,LOGIN_USER_TTL,TimeUnit.MINUTES);
+        //将用户信息放到redis中并设置有效期，同时放入本地缓存
+        loginSessions.save(token, userDTO);
         //返回token
         return Result.ok(token);
     }
 
+    @Override
+    public Result logout(String token, String refreshToken) {
+        if (signedTokens.isEnabled()) {
+            signedTokens.revoke(token, refreshToken);
+        } else if (StrUtil.isNotBlank(token)) {
+            loginSessions.invalidate(token);
+        }
+        return Result.ok();
+    }
+
+    @Override
+    public Result refresh(String refreshToken) {
+        if (!signedTokens.isEnabled()) {
+            return Result.fail("当前登录方式不支持刷新token");
+        }
+        Long userId = signedTokens.consumeRefreshToken(refreshToken);
+        if (userId == null) {
+            return Result.fail("登录已失效，请重新登录");
+        }
+        //重新查询用户，使新token中的昵称、头像为最新
+        User user = getById(userId);
+        if (user == null) {
+            return Result.fail("用户不存在");
+        }
+        return Result.ok(signedTokens.issue(BeanUtil.copyProperties(user, UserDTO.class)));
+    }
+
     private User createUserWithPhone(String phone) {
         User user = new User();
         user.setPhone(phone);
@@ -6,26 +6,35 @@ import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.LuaScriptRegistry;
+import com.hmdp.utils.RedisBloomFilter;
+import com.hmdp.utils.IdGenerator;
+import com.hmdp.utils.SeckillAdmission;
+import com.hmdp.utils.SeckillOrderStatus;
+import com.hmdp.utils.SeckillSoldOutFlags;
+import com.hmdp.utils.SeckillStockShards;
 import com.hmdp.utils.SimpleRedisLock;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
-import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
-import org.springframework.aop.framework.AopContext;
-import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.context.request.async.DeferredResult;
 
-import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.BLOOM_VOUCHER_FILTER;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_STATUS_TTL;
 
 /**
  * <p>
@@ -44,7 +53,7 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
 
     //全局唯一id生成器
     @Resource
-    private RedisIdWorker redisIdWorker;
+    private IdGenerator idGenerator;
 
     @Resource
     private StringRedisTemplate stringRedisTemplate;
@@ -52,103 +61,93 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     @Resource
     private RedissonClient redissonClient;
 
-    // 定义代理对象，提前定义后面会用到
-    private IVoucherOrderService proxy;
+    @Resource
+    private RedisBloomFilter bloomFilter;
 
-    // 注入脚本
-    private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
-    static {
-        SECKILL_SCRIPT = new DefaultRedisScript<>();
-        SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
-        SECKILL_SCRIPT.setResultType(Long.class);
-    }
+    // 预加载的Lua脚本，以EVALSHA执行
+    @Resource
+    private LuaScriptRegistry luaScripts;
 
-    // 创建阻塞队列  这个阻塞队列特点：当一个线程尝试从队列获取元素的时候，如果没有元素该线程阻塞，直到队列中有元素才会被唤醒获取
-    private BlockingQueue<VoucherOrder> orderTasks = new ArrayBlockingQueue<>(1024 * 1024);//初始化阻塞队列的大小
+    @Resource
+    private SeckillStockShards stockShards;
 
-    // 异步处理线程池
-    private static final ExecutorService SECKILL_ORDER_EXECUTOR = Executors.newSingleThreadExecutor();
+    @Resource
+    private SeckillSoldOutFlags soldOutFlags;
 
-    // 在类初始化之后执行，因为当这个类初始化好了之后，随时都是有可能要执行的
-    @PostConstruct
-    private void init() {
-        SECKILL_ORDER_EXECUTOR.submit(new VoucherOrderHandler());
-    }
+    @Resource
+    private SeckillAdmission admission;
 
-    private class VoucherOrderHandler implements Runnable {
-        @Override
-        public void run() {
-            while (true) {
-                try {
-                    // 1.获取队列中的订单信息
-                    VoucherOrder voucherOrder = orderTasks.take();
-                    // 2.创建订单
-                    handleVoucherOrder(voucherOrder);
-                } catch (Exception e) {
-                    log.error("处理订单异常", e);
-                }
-            }
-        }
-    }
+    @Resource
+    private SeckillOrderStatus orderStatus;
 
-    private void handleVoucherOrder(VoucherOrder voucherOrder) {
-        // 1.获取用户
-        Long userId = voucherOrder.getUserId();
-        // 2.获取锁(可重入),自定义锁名称
-        RLock lock = redissonClient.getLock("lock:order:" + userId);
-        // 3.获取锁
-        boolean isLock = lock.tryLock();
-        // 4.判断是否获取锁成功
-        if (!isLock){
-            // 获取锁失败，返回错误或重试
-            log.error("您已购买过该商品，不能重复购买");
-            return;
+    @Override
+    public Result seckillVoucher(Long voucherId) {
+        // 0.本实例已标记售罄，不再访问redis
+        if (soldOutFlags.isSoldOut(voucherId)) {
+            return Result.fail("优惠券已售罄");
         }
-        try {
-            // 获取代理对象（事务）
-            //使用代理对象，最后用于提交事务
-            proxy.createVoucherOrder(voucherOrder);
-        } catch (IllegalStateException e) {
-            throw new RuntimeException(e);
-        } finally {
-            // 释放锁
-            lock.unlock();
+
+        // 0.1.准入控制，超出速率的请求在访问redis布隆过滤器和执行脚本之前立即拒绝
+        if (!admission.tryAcquire(voucherId)) {
+            return Result.fail("系统繁忙，请稍后重试");
         }
-    }
 
-    @Override
-    public Result seckillVoucher(Long voucherId) {
-        // 0.获取用户
+        // 0.2.获取用户
         Long userId = UserHolder.getUser().getId();
 
-        // 1.执行lua脚本
-        Long result = stringRedisTemplate.execute(
-                SECKILL_SCRIPT,
-                Collections.emptyList(), // 这里形参是是key数组，没有key，就传的一个空集合
-                voucherId.toString(), userId.toString()
-        );
+        // 0.3.布隆过滤器拦截不存在的优惠券，避免脚本读取不存在的库存key
+        if (!bloomFilter.mightContain(BLOOM_VOUCHER_FILTER, voucherId)) {
+            return Result.fail("优惠券不存在");
+        }
+
+        // 0.4.订单id，随下单消息一起写入stream
+        long orderId = idGenerator.nextId("order");
+
+        // 1.执行lua脚本，分片库存的优惠券按用户所属分片扣减
+        int shards = stockShards.shardCount(voucherId);
+        Long result = shards > 1
+                ? (long) stockShards.seckill(voucherId, userId, orderId, shards)
+                : luaScripts.execute(
+                        "seckill", Long.class,
+                        Collections.emptyList(), // 这里形参是是key数组，没有key，就传的一个空集合
+                        voucherId.toString(), userId.toString(), String.valueOf(orderId),
+                        TimeUnit.HOURS.toSeconds(SECKILL_ORDER_STATUS_TTL)
+                );
         // 2.判断结果是0
         int r = result.intValue();// Long型转为int型，便于下面比较
+        if (r == 1) {
+            // 2.1.库存不足，标记售罄并通知其他实例
+            soldOutFlags.markSoldOut(voucherId);
+        }
         if (r != 0) {
             //2.1 不为0，代表没有购买资格
-            return Result.fail(r == 1 ? "优惠券已售罄" : "不能重复购买");
+            switch (r) {
+                case 1:
+                    return Result.fail("优惠券已售罄");
+                case 3:
+                    return Result.fail("秒杀活动尚未开始！");
+                case 4:
+                    return Result.fail("秒杀已然结束！");
+                default:
+                    return Result.fail("不能重复购买");
+            }
 
         }
-        // 2.2.为0，代表有购买资格，把下单信息保存到阻塞队列
-        VoucherOrder voucherOrder = new VoucherOrder();
-        // 2.3.订单id
-        long orderId = redisIdWorker.nextId("order");
-        voucherOrder.setId(orderId);
-        // 2.4.用户id
-        voucherOrder.setUserId(userId);
-        // 2.5.代金券id
-        voucherOrder.setVoucherId(voucherId);
-        // 2.6.保存到阻塞队列
-        orderTasks.add(voucherOrder);
-        // 3.获取代理对象，执行创建订单
-        proxy = (IVoucherOrderService)AopContext.currentProxy();
-        // 4.返回订单id
-        return Result.ok();
+        // 2.2.为0，代表有购买资格，脚本已把下单信息写入stream.orders，由SeckillOrderConsumer异步创建订单
+        // 3.返回订单id，客户端据此查询下单结果
+        return Result.ok(orderId);
+    }
+
+    /**
+     * 查询当前用户的秒杀订单结果，订单仍在排队时长轮询等待
+     * @param voucherId
+     * @param orderId
+     * @param waitMillis 最长等待时间，为空或0时立即返回
+     * @return
+     */
+    @Override
+    public DeferredResult<Result> querySeckillOrder(Long voucherId, Long orderId, Long waitMillis) {
+        return orderStatus.await(voucherId, orderId, UserHolder.getUser().getId(), waitMillis == null ? 0L : waitMillis);
     }
 
 
@@ -175,7 +174,7 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
 //        Long userId = UserHolder.getUser().getId();
 //
 //        // 创建锁对象
-////        SimpleRedisLock simpleRedisLock = new SimpleRedisLock("order:" + userId, stringRedisTemplate);
+////        SimpleRedisLock simpleRedisLock = new SimpleRedisLock("order:" + userId, stringRedisTemplate, luaScripts);
 //        RLock lock = redissonClient.getLock("lock:order:" + userId);
 //
 ////        boolean isLock = simpleRedisLock.tryLock(1000);
@@ -205,31 +204,95 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
 //
 //    }
 
+    /**
+     * 创建订单，消息可能被重复投递，已存在的订单直接跳过
+     * @param voucherOrder
+     * @return 该订单是否已写入数据库（新创建，或重复投递时已存在）
+     */
     @Transactional
-    public void createVoucherOrder(VoucherOrder voucherOrder) {
+    public boolean createVoucherOrder(VoucherOrder voucherOrder) {
         // 5.实现一人一单逻辑
         // 5.1.用户id
         Long userId = voucherOrder.getUserId();
         // 5.2.查询订单
-        Integer count = query().eq("user_id", userId).eq("voucher_id", voucherOrder).count();
+        VoucherOrder existing = query().select("id")
+                .eq("user_id", userId).eq("voucher_id", voucherOrder.getVoucherId()).last("limit 1").one();
         // 5.2.判断是否已经购买过
-        if (count > 0) {
+        if (existing != null) {
+            // 重复投递的消息，订单已经存在
+            if (existing.getId().equals(voucherOrder.getId())) {
+                return true;
+            }
             // 用户已经购买过
             log.error("不可重复购买");
+            return false;
         }
 
         // 判断 stock>0 来保证不会扣减库存至负数，解决超卖问题
         boolean success = seckillVoucherService.update()
                 .setSql("stock= stock -1")
-                .eq("voucher_id", voucherOrder).gt("stock", 0).update(); //where id = ? and stock > 0
+                .eq("voucher_id", voucherOrder.getVoucherId()).gt("stock", 0).update(); //where id = ? and stock > 0
 
         if (!success) {
             // 扣减库存
             log.error("库存不足，扣减失败！");
+            return false;
+        }
+
+        return save(voucherOrder);
+
+    }
+
+    /**
+     * 在一个事务中批量创建订单：批内及数据库中已存在的订单跳过，按优惠券聚合扣减库存，再一次多行插入
+     * 任意一张优惠券库存不足时整批回滚，由调用方逐条重试；
+     * (user_id, voucher_id)上有唯一索引，并发处理同一条重复投递的消息时插入失败、整批回滚，不会重复下单
+     * @param voucherOrders
+     * @return 已写入数据库的订单id，包括本次新创建的和重复投递时已存在的
+     */
+    @Override
+    @Transactional
+    public Set<Long> createVoucherOrders(List<VoucherOrder> voucherOrders) {
+        Set<Long> persisted = new HashSet<>();
+        // 1.一人一单：同一用户同一优惠券只保留一个订单
+        Map<String, VoucherOrder> orders = new LinkedHashMap<>();
+        for (VoucherOrder order : voucherOrders) {
+            orders.putIfAbsent(order.getUserId() + ":" + order.getVoucherId(), order);
         }
+        if (orders.isEmpty()) {
+            return persisted;
+        }
+
+        // 2.去掉数据库中已存在的订单（重复投递的消息），按(user_id, voucher_id)精确匹配，走唯一索引
+        query().select("id", "user_id", "voucher_id")
+                .and(w -> orders.values().forEach(order ->
+                        w.or(q -> q.eq("user_id", order.getUserId()).eq("voucher_id", order.getVoucherId()))))
+                .list()
+                .forEach(existing -> {
+                    orders.remove(existing.getUserId() + ":" + existing.getVoucherId());
+                    persisted.add(existing.getId());
+                });
+        if (orders.isEmpty()) {
+            return persisted;
+        }
+        List<VoucherOrder> toCreate = new ArrayList<>(orders.values());
 
-        save(voucherOrder);
+        // 3.按优惠券聚合扣减库存，stock >= k 保证不会超卖
+        Map<Long, Long> counts = toCreate.stream()
+                .collect(Collectors.groupingBy(VoucherOrder::getVoucherId, Collectors.counting()));
+        for (Map.Entry<Long, Long> entry : counts.entrySet()) {
+            boolean success = seckillVoucherService.update()
+                    .setSql("stock = stock - " + entry.getValue())
+                    .eq("voucher_id", entry.getKey()).ge("stock", entry.getValue()).update();
+            if (!success) {
+                throw new IllegalStateException("库存不足，扣减失败！voucherId：" + entry.getKey());
+            }
+        }
 
+        // 4.多行插入订单
+        getBaseMapper().insertBatch(toCreate);
+        toCreate.forEach(order -> persisted.add(order.getId()));
+        return persisted;
     }
 
 //    @Transactional
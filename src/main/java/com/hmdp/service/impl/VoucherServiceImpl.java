@@ -7,7 +7,10 @@ import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.SeckillSoldOutFlags;
+import com.hmdp.utils.SeckillStockShards;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -16,6 +19,7 @@ import javax.annotation.Resource;
 import java.util.List;
 
 import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_WINDOW_KEY;
 
 /**
  * <p>
@@ -34,6 +38,16 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
     @Resource
     private StringRedisTemplate stringRedisTemplate;
 
+    @Resource
+    private SeckillStockShards stockShards;
+
+    @Resource
+    private SeckillSoldOutFlags soldOutFlags;
+
+    // 秒杀库存分片数，大于1时把库存拆分到多个slot
+    @Value("${hmdp.seckill.stock-shards:1}")
+    private int stockShardCount;
+
     @Override
     public Result queryVoucherOfShop(Long shopId) {
         // 查询优惠券信息
@@ -42,9 +56,24 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         return Result.ok(vouchers);
     }
 
+    /**
+     * 新增秒杀券，库存和时间窗口写入redis，由脚本校验
+     * @param voucher 优惠券信息，包含秒杀信息
+     * @return 优惠券id
+     */
     @Override
     @Transactional
-    public void addSeckillVoucher(Voucher voucher) {
+    public Result addSeckillVoucher(Voucher voucher) {
+        // 先校验秒杀信息，避免数据库写入后redis初始化失败
+        if (voucher.getStock() == null || voucher.getStock() <= 0) {
+            return Result.fail("秒杀库存必须大于0");
+        }
+        if (voucher.getBeginTime() == null || voucher.getEndTime() == null) {
+            return Result.fail("秒杀开始和结束时间不能为空");
+        }
+        if (!voucher.getBeginTime().isBefore(voucher.getEndTime())) {
+            return Result.fail("秒杀开始时间必须早于结束时间");
+        }
         // 保存优惠券
         save(voucher);
         // 保存秒杀信息
@@ -55,6 +84,48 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setEndTime(voucher.getEndTime());
         seckillVoucherService.save(seckillVoucher);
         // 保存秒杀库存到Redis中
+        if (stockShardCount > 1 && voucher.getStock() > 1) {
+            // 分片库存模式
+            stockShards.init(voucher.getId(), voucher.getStock(), stockShardCount,
+                    SeckillStockShards.window(voucher.getBeginTime(), voucher.getEndTime()));
+            return Result.ok(voucher.getId());
+        }
         stringRedisTemplate.opsForValue().set(SECKILL_STOCK_KEY + voucher.getId(), voucher.getStock().toString());
+        // 保存秒杀时间窗口，由脚本校验，下单时不再查询数据库
+        stringRedisTemplate.opsForHash().putAll(SECKILL_WINDOW_KEY + voucher.getId(),
+                SeckillStockShards.window(voucher.getBeginTime(), voucher.getEndTime()));
+        return Result.ok(voucher.getId());
+    }
+
+    /**
+     * 补充秒杀库存，并清除各实例的售罄标记
+     * @param voucherId
+     * @param amount 补充的数量
+     * @return
+     */
+    @Override
+    @Transactional
+    public Result replenishSeckillStock(Long voucherId, Integer amount) {
+        if (amount == null || amount <= 0) {
+            return Result.fail("补充数量必须大于0");
+        }
+        // 1.数据库库存
+        boolean success = seckillVoucherService.update()
+                .setSql("stock = stock + " + amount)
+                .eq("voucher_id", voucherId).update();
+        if (!success) {
+            return Result.fail("秒杀券不存在");
+        }
+        // 2.redis库存，先清除各实例缓存的分片数，按redis中的分片数补充
+        stockShards.evict(voucherId);
+        int shards = stockShards.shardCount(voucherId);
+        if (shards > 1) {
+            stockShards.replenish(voucherId, amount, shards);
+        } else {
+            stringRedisTemplate.opsForValue().increment(SECKILL_STOCK_KEY + voucherId, amount);
+        }
+        // 3.清除售罄标记
+        soldOutFlags.clear(voucherId);
+        return Result.ok();
     }
 }
@@ -0,0 +1,209 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.collection.CollUtil;
+import com.hmdp.mapper.BlogMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 博文点赞
+ * 1.每篇博文的点赞用户保存在有序集合 blog:liked:{blogId} 中（分数为点赞时间），用于一人一赞和"我是否点赞"
+ * 2.点赞数的变化由脚本累加到 hash blog:like:{delta}，定时批量写入 tb_blog.liked，每个周期每篇博文只更新一次数据库
+ * 3.写库时先把增量hash原子地重命名为 blog:like:{delta}:flushing，每批UPDATE成功后立即从中删除这一批博文；
+ *   写库失败或进程崩溃时只保留尚未写入的博文，下个周期优先重试，新的点赞继续累加到新的增量hash
+ * 4.同一个脚本中更新热度排行 blog:hot 的分数，见 {@link BlogRanking}
+ */
+@Slf4j
+@Component
+public class BlogLikes {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private LuaScriptRegistry luaScripts;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Resource
+    private BlogMapper blogMapper;
+
+    @Resource
+    private BlogRanking blogRanking;
+
+    @Value("${hmdp.blog.like.flush-interval-millis:5000}")
+    private long flushIntervalMillis;
+
+    @Value("${hmdp.blog.like.flush-batch-size:500}")
+    private int flushBatchSize;
+
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(
+            r -> new Thread(r, "blog-like-flusher"));
+
+    @PostConstruct
+    private void init() {
+        flusher.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        flusher.shutdownNow();
+        // 停机前把已累加的增量写入数据库
+        flush();
+    }
+
+    /**
+     * 点赞或取消点赞
+     * @param blogId
+     * @param userId
+     * @return true 点赞，false 取消点赞
+     */
+    public boolean toggle(Long blogId, Long userId) {
+        Long result = luaScripts.execute("blog_like", Long.class,
+                Arrays.asList(BLOG_LIKED_KEY + blogId, BLOG_LIKE_DELTA_KEY, BLOG_HOT_KEY, BLOG_HOT_LIKES_KEY, BLOG_HOT_TIME_KEY),
+                userId.toString(), blogId.toString(), String.valueOf(System.currentTimeMillis()),
+                String.valueOf(blogRanking.getMaxSize()));
+        return result != null && result == 1L;
+    }
+
+    /**
+     * 用户点赞过的博文
+     * @param userId
+     * @param blogIds
+     * @return blogIds中该用户点赞过的博文id
+     */
+    public Set<Long> likedBy(Long userId, Collection<Long> blogIds) {
+        Set<Long> liked = new HashSet<>();
+        if (userId == null || CollUtil.isEmpty(blogIds)) {
+            return liked;
+        }
+        List<Long> ids = new ArrayList<>(blogIds);
+        String member = userId.toString();
+        List<Object> scores = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Long id : ids) {
+                conn.zScore(BLOG_LIKED_KEY + id, member);
+            }
+            return null;
+        });
+        for (int i = 0; i < ids.size(); i++) {
+            if (scores.get(i) != null) {
+                liked.add(ids.get(i));
+            }
+        }
+        return liked;
+    }
+
+    /**
+     * 尚未写入数据库的点赞数增量，展示点赞数时与数据库中的值相加
+     * @param blogIds
+     * @return 博文id到增量，没有增量的博文不出现在结果中
+     */
+    public Map<Long, Long> pendingDeltas(Collection<Long> blogIds) {
+        Map<Long, Long> deltas = new HashMap<>();
+        if (CollUtil.isEmpty(blogIds)) {
+            return deltas;
+        }
+        List<Long> ids = new ArrayList<>(blogIds);
+        List<Object> fields = new ArrayList<>(ids.size());
+        ids.forEach(id -> fields.add(id.toString()));
+        List<Object> values = new ArrayList<>();
+        values.addAll(stringRedisTemplate.opsForHash().multiGet(BLOG_LIKE_DELTA_KEY, fields));
+        values.addAll(stringRedisTemplate.opsForHash().multiGet(BLOG_LIKE_FLUSHING_KEY, fields));
+        for (int i = 0; i < values.size(); i++) {
+            Object value = values.get(i);
+            if (value != null) {
+                deltas.merge(ids.get(i % ids.size()), Long.parseLong(value.toString()), Long::sum);
+            }
+        }
+        return deltas;
+    }
+
+    /**
+     * 把累加的点赞数增量批量写入数据库，多个实例中同一时刻只有一个在执行
+     */
+    public void flush() {
+        RLock lock = redissonClient.getLock(LOCK_BLOG_LIKE_FLUSH_KEY);
+        try {
+            if (!lock.tryLock(0, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            // 上次写库失败遗留的增量优先处理，否则把当前的增量切换出来
+            if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(BLOG_LIKE_FLUSHING_KEY))) {
+                if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(BLOG_LIKE_DELTA_KEY))
+                        || !Boolean.TRUE.equals(stringRedisTemplate.renameIfAbsent(BLOG_LIKE_DELTA_KEY, BLOG_LIKE_FLUSHING_KEY))) {
+                    return;
+                }
+            }
+            Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(BLOG_LIKE_FLUSHING_KEY);
+            Map<Long, Long> batch = new LinkedHashMap<>();
+            int blogs = 0;
+            for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+                long delta = Long.parseLong(entry.getValue().toString());
+                if (delta == 0) {
+                    continue;
+                }
+                batch.put(Long.valueOf(entry.getKey().toString()), delta);
+                if (batch.size() >= flushBatchSize) {
+                    blogs += write(batch);
+                }
+            }
+            blogs += write(batch);
+            // 剩下的只有增量为0的博文
+            stringRedisTemplate.delete(BLOG_LIKE_FLUSHING_KEY);
+            if (blogs > 0) {
+                log.debug("点赞数写入数据库，博文数：{}", blogs);
+            }
+        } catch (Exception e) {
+            log.error("点赞数写入数据库失败，下个周期重试", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 写入一批增量，成功后立即从写库中的hash删除这些博文：
+     * 后续批次失败时不会重复写入这一批，展示点赞数时也不会把已写入数据库的增量再加一次
+     */
+    private int write(Map<Long, Long> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        int size = batch.size();
+        blogMapper.incrementLiked(batch);
+        Object[] fields = batch.keySet().stream().map(String::valueOf).toArray();
+        stringRedisTemplate.opsForHash().delete(BLOG_LIKE_FLUSHING_KEY, fields);
+        batch.clear();
+        return size;
+    }
+}
@@ -0,0 +1,116 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Blog;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static com.hmdp.utils.RedisConstants.BLOG_HOT_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_HOT_LIKES_KEY;
+import static com.hmdp.utils.RedisConstants.BLOG_HOT_TIME_KEY;
+
+/**
+ * 博文热度排行
+ * 分数 = log10(max(点赞数, 1)) + (发布时间 - 起始时间) / 衰减周期，即每晚发布一个衰减周期，需要多10倍的点赞才能排在同样的位置。
+ * 发布时间项固定不变，因此不需要定时重新计算分数：每篇博文的点赞数和发布时间项保存在 blog:hot:likes、blog:hot:time 中，
+ * 发布博文时加入排行，点赞/取消点赞时由 blog_like.lua 重新计算分数；
+ * 排行只保留分数最高的 max-size 篇博文，被挤出的博文在分数超过排行最低分时重新加入。
+ */
+@Slf4j
+@Component
+public class BlogRanking {
+
+    //开始时间戳
+    private static final long BEGIN_TIMESTAMP = 1711843200L;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    // 发布时间每晚该秒数，分数减少1（相当于点赞数少一个数量级）
+    @Value("${hmdp.blog.hot.decay-seconds:45000}")
+    private long decaySeconds;
+
+    // 排行保留的博文数
+    @Value("${hmdp.blog.hot.max-size:1000}")
+    private int maxSize;
+
+    /**
+     * 发布博文时加入排行
+     * @param blog
+     */
+    public void add(Blog blog) {
+        addAll(Collections.singletonList(blog));
+        trim();
+    }
+
+    /**
+     * 以博文当前的点赞数批量写入排行，已在排行中的博文覆盖分数和点赞数。不裁剪排行，批量写入完成后调用 {@link #trim()}
+     * @param blogs 点赞数需要已包含尚未写入数据库的增量
+     */
+    public void addAll(Collection<Blog> blogs) {
+        if (blogs.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Blog blog : blogs) {
+                int likes = blog.getLiked() == null ? 0 : blog.getLiked();
+                double timeScore = timeScore(blog.getCreateTime());
+                String id = blog.getId().toString();
+                conn.zAdd(BLOG_HOT_KEY, Math.log10(Math.max(likes, 1)) + timeScore, id);
+                conn.hSet(BLOG_HOT_LIKES_KEY, id, String.valueOf(likes));
+                conn.hSet(BLOG_HOT_TIME_KEY, id, String.valueOf(timeScore));
+            }
+            return null;
+        });
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * 按热度降序分页
+     * @param current 页码，从1开始
+     * @param size 每页条数
+     * @return 博文id
+     */
+    public List<Long> page(int current, int size) {
+        long start = (long) (Math.max(current, 1) - 1) * size;
+        Set<String> members = stringRedisTemplate.opsForZSet().reverseRange(BLOG_HOT_KEY, start, start + size - 1);
+        if (members == null || members.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Long> ids = new ArrayList<>(members.size());
+        members.forEach(member -> ids.add(Long.valueOf(member)));
+        return ids;
+    }
+
+    /**
+     * 只保留分数最高的 max-size 篇博文，被移除的博文保留点赞数和发布时间项，之后仍可重新加入
+     */
+    public void trim() {
+        Long removed = stringRedisTemplate.opsForZSet().removeRange(BLOG_HOT_KEY, 0, -(maxSize + 1L));
+        if (removed != null && removed > 0) {
+            log.debug("裁剪热度排行，移除博文数：{}", removed);
+        }
+    }
+
+    private double timeScore(LocalDateTime createTime) {
+        LocalDateTime time = createTime == null ? LocalDateTime.now() : createTime;
+        long seconds = time.atZone(ZoneId.systemDefault()).toEpochSecond() - BEGIN_TIMESTAMP;
+        return (double) seconds / decaySeconds;
+    }
+}
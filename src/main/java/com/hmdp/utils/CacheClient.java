@@ -1,19 +1,37 @@
 package com.hmdp.utils;
 
 import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
-import com.hmdp.entity.Shop;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.utils.codec.CacheCodec;
+import com.hmdp.utils.codec.CacheEntry;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.stereotype.Component;
 
-import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static com.hmdp.utils.RedisConstants.*;
 
@@ -21,38 +39,220 @@ import static com.hmdp.utils.RedisConstants.*;
 @Component
 public class CacheClient {
 
-    //线程池
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR= Executors.newFixedThreadPool(10);
+    // 空值标记，用于缓存数据库中不存在的数据
+    private static final byte[] NULL_VALUE = new byte[0];
 
     private final StringRedisTemplate stringRedisTemplate;
 
-    public CacheClient(StringRedisTemplate stringRedisTemplate) {
+    // 缓存值以编解码器输出的原始字节读写
+    private final RedisTemplate<String, byte[]> byteRedisTemplate;
+
+    private final CacheCodec codec;
+
+    private final RedisMessageListenerContainer listenerContainer;
+
+    private final RedisBloomFilter bloomFilter;
+
+    // 全局共享的缓存重建调度器
+    private final CacheRefresher cacheRefresher;
+
+    // 热点key探测，关闭一级缓存时热点key在进程内保存短TTL副本
+    private final HotKeyDetector hotKeyDetector;
+
+    // 开启布隆过滤的缓存前缀及其对应的过滤器名称
+    private final Map<String, String> bloomGuards = new ConcurrentHashMap<>();
+
+    // 进程内一级缓存，value为反序列化后的对象（逻辑过期的数据存放CacheEntry）
+    private final Cache<String, Object> localCache;
+
+    private final boolean localCacheEnabled;
+
+    // 正在重建中的key，同一JVM内的并发未命中共享同一个future
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlightLoads = new ConcurrentHashMap<>();
+
+    // leader轮询其他实例重建结果的间隔
+    private static final long SINGLE_FLIGHT_RETRY_INTERVAL_MILLIS = 20L;
+
+    // single-flight模式下等待重建结果的最长时间
+    @Value("${hmdp.cache.single-flight.max-wait-millis:1000}")
+    private long singleFlightMaxWaitMillis;
+
+    // TTL随机浮动比例，避免同一批写入的key同时过期
+    @Value("${hmdp.cache.ttl-jitter-ratio:0.1}")
+    private double ttlJitterRatio;
+
+    // 概率提前过期的系数，越大越倾向于提前重建
+    @Value("${hmdp.cache.early-expire.beta:1.0}")
+    private double earlyExpireBeta;
+
+    public CacheClient(StringRedisTemplate stringRedisTemplate,
+                       RedisTemplate<String, byte[]> byteRedisTemplate,
+                       CacheCodec codec,
+                       RedisMessageListenerContainer listenerContainer,
+                       RedisBloomFilter bloomFilter,
+                       CacheRefresher cacheRefresher,
+                       HotKeyDetector hotKeyDetector,
+                       @Value("${hmdp.cache.local.enabled:true}") boolean localCacheEnabled,
+                       @Value("${hmdp.cache.local.maximum-size:10000}") long localMaximumSize,
+                       @Value("${hmdp.cache.local.expire-seconds:60}") long localExpireSeconds) {
         this.stringRedisTemplate = stringRedisTemplate;
+        this.byteRedisTemplate = byteRedisTemplate;
+        this.codec = codec;
+        this.listenerContainer = listenerContainer;
+        this.bloomFilter = bloomFilter;
+        this.cacheRefresher = cacheRefresher;
+        this.hotKeyDetector = hotKeyDetector;
+        this.localCacheEnabled = localCacheEnabled;
+        // Caffeine 默认使用 W-TinyLFU 淘汰策略，按条目数和写入时间双重限制
+        this.localCache = Caffeine.newBuilder()
+                .maximumSize(localMaximumSize)
+                .expireAfterWrite(localExpireSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * 订阅缓存失效频道，其他实例删除缓存时同步清理本地一级缓存
+     */
+    @PostConstruct
+    private void subscribeInvalidation() {
+        listenerContainer.addMessageListener(
+                (message, pattern) -> evictLocal(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+    }
+
+    /**
+     * 删除缓存：删除redis中的key、清理本实例的一级缓存，并广播通知其他实例清理
+     * @param key
+     */
+    public void delete(String key) {
+        stringRedisTemplate.delete(key);
+        evictLocal(key);
+        stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, key);
+    }
+
+    /**
+     * 清理本实例的一级缓存和热点副本
+     */
+    private void evictLocal(String key) {
+        localCache.invalidate(key);
+        hotKeyDetector.invalidate(key);
+    }
+
+    /**
+     * 为指定的缓存前缀开启布隆过滤，过滤器判定不存在的id直接返回null，不再访问redis和数据库
+     * @param keyPrefix
+     * @param filterName
+     */
+    public void guardWithBloomFilter(String keyPrefix, String filterName) {
+        bloomGuards.put(keyPrefix, filterName);
+    }
+
+    /**
+     * 判断id是否可能存在，未开启布隆过滤的前缀一律视为可能存在
+     */
+    private <ID> boolean mightExist(String keyPrefix, ID id) {
+        String filterName = bloomGuards.get(keyPrefix);
+        return filterName == null || bloomFilter.mightContain(filterName, id);
+    }
+
+    /**
+     * 写入空值标记，防止缓存穿透
+     */
+    private void setNull(String key, Long time, TimeUnit unit) {
+        byteRedisTemplate.opsForValue().set(key, NULL_VALUE, time, unit);
+    }
+
+    /**
+     * 是否为空值标记
+     */
+    private static boolean isNull(byte[] raw) {
+        return raw != null && raw.length == 0;
+    }
+
+    /**
+     * 解码缓存值，未命中、空值标记或格式不兼容时返回null
+     */
+    private <R> R decode(byte[] raw, Class<R> type) {
+        if (raw == null || raw.length == 0) {
+            return null;
+        }
+        return codec.decode(raw, type);
+    }
+
+    /**
+     * 从一级缓存读取指定类型的对象，关闭一级缓存时读取热点副本，不存在或类型不匹配时返回null
+     * 每次读取都会计入热点key探测
+     * @param key
+     * @param type
+     * @return
+     * @param <T>
+     */
+    private <T> T getLocal(String key, Class<T> type) {
+        boolean hot = hotKeyDetector.record(key);
+        Object value = null;
+        if (localCacheEnabled) {
+            value = localCache.getIfPresent(key);
+        } else if (hot) {
+            value = hotKeyDetector.getReplica(key);
+        }
+        return type.isInstance(value) ? type.cast(value) : null;
+    }
+
+    /**
+     * 写入一级缓存；关闭一级缓存时，热点key写入热点副本
+     * @param key
+     * @param value
+     */
+    private void putLocal(String key, Object value) {
+        if (value == null) {
+            return;
+        }
+        if (localCacheEnabled) {
+            localCache.put(key, value);
+        } else if (hotKeyDetector.isHot(key)) {
+            hotKeyDetector.putReplica(key, value);
+        }
     }
 
     /**
-     * 将任意对象序列化为JSON并存储到string类型的key中，并且设置TTL，用于处理缓存穿透
+     * 将任意对象编码后存储到string类型的key中，并且设置TTL，用于处理缓存穿透
      * @param key
      * @param value
      * @param time
      * @param unit
      */
     public void set(String key, Object value, Long time, TimeUnit unit){
-        stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value),time,unit);
+        byteRedisTemplate.opsForValue().set(key, codec.encode(value), jitter(time, unit), TimeUnit.MILLISECONDS);
     }
 
     /**
-     * 将任意对象序列化为JSON并存储到string类型的key中，并且设置逻辑过期时间，用于处理缓存击穿
+     * 将TTL在 ±ttlJitterRatio 范围内随机浮动
+     * @param time
+     * @param unit
+     * @return 浮动后的TTL（毫秒）
+     */
+    private long jitter(Long time, TimeUnit unit) {
+        long millis = unit.toMillis(time);
+        if (ttlJitterRatio <= 0) {
+            return millis;
+        }
+        double factor = 1 + ThreadLocalRandom.current().nextDouble(-ttlJitterRatio, ttlJitterRatio);
+        return Math.max(1L, (long) (millis * factor));
+    }
+
+    /**
+     * 将任意对象编码后存储到string类型的key中，并且设置逻辑过期时间，用于处理缓存击穿
      * @param key
      * @param value
      * @param time
      * @param unit
      */
     public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit){
-        RedisData redisData = new RedisData();
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(unit.toSeconds(time)));
-        redisData.setData(value);
-        stringRedisTemplate.opsForValue().set(key,JSONUtil.toJsonStr(redisData));
+        long expireAt = System.currentTimeMillis() + unit.toMillis(time);
+        byteRedisTemplate.opsForValue().set(key, codec.encodeWithExpire(value, expireAt));
+        // 逻辑过期数据重建后，通知各实例丢弃旧的一级缓存
+        evictLocal(key);
+        stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, key);
     }
 
     /**
@@ -72,15 +272,28 @@ public class CacheClient {
 
         String key = keyPrefix + id;
 
+        // 先查一级缓存
+        R local = getLocal(key, type);
+        if (local != null) {
+            return local;
+        }
+
+        // 布隆过滤器判定不存在，直接返回
+        if (!mightExist(keyPrefix, id)) {
+            return null;
+        }
+
         // 在redis中查询商户
-        String jsonObj = stringRedisTemplate.opsForValue().get(key);
+        byte[] raw = byteRedisTemplate.opsForValue().get(key);
 
         // 存在，则返回
-        if (StrUtil.isNotBlank(jsonObj)){
-            return JSONUtil.toBean(jsonObj, type);
+        R cached = decode(raw, type);
+        if (cached != null){
+            putLocal(key, cached);
+            return cached;
         }
-        // 如果redis中为""空字符串,返回null
-        if (jsonObj != null){
+        // 如果redis中为空值标记,返回null
+        if (isNull(raw)){
             return null;
         }
 
@@ -89,11 +302,12 @@ public class CacheClient {
         //不存在，返回错误信息
         if (r == null){
             //把空值写到redis，防止缓存穿透
-            stringRedisTemplate.opsForValue().set(key,"",CACHE_NULL_TTL,TimeUnit.MINUTES);
+            setNull(key,CACHE_NULL_TTL,TimeUnit.MINUTES);
             return null;
         }
         //存在，将查询的数据放到redis中
         this.set(key,r,time,unit);
+        putLocal(key, r);
 
         //返回信息
         return r;
@@ -115,46 +329,139 @@ public class CacheClient {
             String keyPrefix,ID id,Class<R> type,Function<ID,R> dbfunction,Long time,TimeUnit unit){
         String key = keyPrefix + id;
 
-        // 在redis中查询
-        String json = stringRedisTemplate.opsForValue().get(key);
+        // 先查一级缓存，其中存放的是已反序列化的数据及其逻辑过期时间
+        CacheEntry<?> entry = getLocal(key, CacheEntry.class);
+        if (entry == null || !type.isInstance(entry.getData())) {
+            // 在redis中查询
+            byte[] raw = byteRedisTemplate.opsForValue().get(key);
 
-        // 未命中则返回null
-        if (StrUtil.isBlank(json)){
-            return null;
+            // 未命中则返回null
+            if (raw == null || raw.length == 0){
+                return null;
+            }
+
+            // 命中,解码为对象及其逻辑过期时间
+            entry = codec.decodeWithExpire(raw, type);
+            if (entry == null || entry.getData() == null) {
+                return null;
+            }
+            putLocal(key, entry);
         }
+        R r = type.cast(entry.getData());
 
-        // 命中,将json反序列为对象
-        RedisData redisData = JSONUtil.toBean(json, RedisData.class);
-        JSONObject data = (JSONObject) redisData.getData();
-        R r = JSONUtil.toBean(data, type);
+        // 重建任务：获取互斥锁后查询数据库并写回，其他实例正在重建时直接放弃
+        String lockKey = LOCK_SHOP_KEY+id;
+        Runnable rebuild = () -> {
+            if (!trylock(lockKey)) {
+                return;
+            }
+            try {
+                R r1 = dbfunction.apply(id);
+                this.setWithLogicalExpire(key,r1,time,unit);
+            } finally {
+                // 释放锁
+                unlock(lockKey);
+            }
+        };
+
+        // 记录访问，热点key会在逻辑过期前被提前重建
+        cacheRefresher.recordAccess(key, entry.getExpireAt(), rebuild);
 
         // 判断缓存逻辑是否过期
-        LocalDateTime expireTime = redisData.getExpireTime();
         //未过期,直接返回
-        if (expireTime.isAfter(LocalDateTime.now())) {
+        if (entry.getExpireAt() > System.currentTimeMillis()) {
             return r;
         }
-        // 已过期，缓存重建
-        String lockKey = LOCK_SHOP_KEY+id;
+        // 已过期，交给共享的重建调度器异步重建（按key去重、限流）
+        cacheRefresher.submit(key, rebuild);
 
-        // 获取锁
-        boolean isLock = trylock(lockKey);
-        // 获取到锁，开启独立线程，实现缓存重建
-        if (isLock) {
-            CACHE_REBUILD_EXECUTOR.submit(()->{
-                try {
-                    R r1 = dbfunction.apply(id);
-                    this.setWithLogicalExpire(key,r1,time,unit);
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }finally {
-                    // 释放锁
-                    unlock(lockKey);
-                }
-            });
+        // 返回信息
+        return r;
+    }
+
+    /**
+     * 根据指定的key查询缓存，利用概率提前过期（XFetch）解决缓存雪崩问题：
+     * 缓存值中保存过期时间和上一次重建耗时delta，每次读取时若 now - delta * beta * ln(random) >= expireAt 则提前重建，
+     * 越接近过期、重建越慢，提前重建的概率越大；重建交给共享的重建调度器异步执行，当前请求仍返回未过期的数据。
+     * 冷启动未命中时与queryWithSingleFlight一样合并本实例的并发请求，只有一个线程查询数据库。
+     * 该模式为可选策略，缓存值需带过期信息，使用时替换ShopServiceImpl中的queryWithSingleFlight
+     * @param keyPrefix
+     * @param id
+     * @param type
+     * @param dbFallback
+     * @param time
+     * @param unit
+     * @return
+     * @param <R>
+     * @param <ID>
+     */
+    public <R,ID> R queryWithEarlyExpire(
+            String keyPrefix, ID id, Class<R> type, Function<ID,R> dbFallback, Long time, TimeUnit unit){
+        String key = keyPrefix + id;
+
+        // 1.先查一级缓存，其中存放的是已反序列化的数据及其过期时间、重建耗时
+        CacheEntry<?> entry = getLocal(key, CacheEntry.class);
+        if (entry == null || !type.isInstance(entry.getData())) {
+            // 布隆过滤器判定不存在，直接返回
+            if (!mightExist(keyPrefix, id)) {
+                return null;
+            }
+            // 2.在redis中查询
+            byte[] raw = byteRedisTemplate.opsForValue().get(key);
+            if (isNull(raw)) {
+                return null;
+            }
+            entry = raw == null ? null : codec.decodeWithExpire(raw, type);
+            if (entry == null || entry.getData() == null || entry.getExpireAt() == 0) {
+                // 3.未命中或没有过期信息，同一个key只允许一个线程查询数据库重建
+                return singleFlight(key, type,
+                        () -> loadWithDelta(key, id, dbFallback, time, unit),
+                        () -> {
+                            byte[] s = byteRedisTemplate.opsForValue().get(key);
+                            if (isNull(s)) {
+                                return null;
+                            }
+                            CacheEntry<R> loaded = s == null ? null : codec.decodeWithExpire(s, type);
+                            if (loaded != null && loaded.getData() != null && loaded.getExpireAt() != 0) {
+                                return loaded.getData();
+                            }
+                            log.warn("等待缓存重建超时，直接查询数据库，key：{}", key);
+                            return loadWithDelta(key, id, dbFallback, time, unit);
+                        });
+            }
+            putLocal(key, entry);
         }
+        R r = type.cast(entry.getData());
 
-        // 返回信息
+        // 4.按概率决定是否提前重建
+        long now = System.currentTimeMillis();
+        double gap = -entry.getDelta() * earlyExpireBeta * Math.log(1 - ThreadLocalRandom.current().nextDouble());
+        if (now + gap >= entry.getExpireAt()) {
+            cacheRefresher.submit(key, () -> loadWithDelta(key, id, dbFallback, time, unit));
+        }
+        return r;
+    }
+
+    /**
+     * 查询数据库并记录耗时，连同过期时间一起写入缓存，TTL随机浮动
+     */
+    private <R,ID> R loadWithDelta(String key, ID id, Function<ID,R> dbFallback, Long time, TimeUnit unit) {
+        long begin = System.currentTimeMillis();
+        R r = dbFallback.apply(id);
+        long delta = Math.max(1L, System.currentTimeMillis() - begin);
+        if (r == null) {
+            setNull(key, CACHE_NULL_TTL, TimeUnit.MINUTES);
+            evictLocal(key);
+            return null;
+        }
+        long ttl = jitter(time, unit);
+        CacheEntry<R> entry = new CacheEntry<>(r, System.currentTimeMillis() + ttl, delta);
+        byteRedisTemplate.opsForValue().set(key, codec.encodeWithExpire(r, entry.getExpireAt(), delta),
+                ttl, TimeUnit.MILLISECONDS);
+        // 先清理各实例的旧数据，再放入本实例的新数据
+        stringRedisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, key);
+        evictLocal(key);
+        putLocal(key, entry);
         return r;
     }
 
@@ -162,16 +469,29 @@ public class CacheClient {
             String keyPrefix,ID id,Class<R> type,Function<ID,R> dbfunction,Long time,TimeUnit unit){
         String key = keyPrefix + id;
 
+        // 0.先查一级缓存
+        R local = getLocal(key, type);
+        if (local != null) {
+            return local;
+        }
+
+        // 布隆过滤器判定不存在，直接返回
+        if (!mightExist(keyPrefix, id)) {
+            return null;
+        }
+
         // 1.在redis中查询商户
-        String json = stringRedisTemplate.opsForValue().get(key);
+        byte[] raw = byteRedisTemplate.opsForValue().get(key);
 
         // 2.判断是否存在
         // 2.1.存在，则返回
-        if (StrUtil.isNotBlank(json)){
-            return JSONUtil.toBean(json, type);
+        R cached = decode(raw, type);
+        if (cached != null){
+            putLocal(key, cached);
+            return cached;
         }
-        // 2.2如果redis中为""空字符串,返回失败
-        if (json != null){
+        // 2.2如果redis中为空值标记,返回失败
+        if (isNull(raw)){
             return null;
         }
 
@@ -192,13 +512,14 @@ public class CacheClient {
 
             // 3.4.成功获取，开始重建
             // 3.5.获取锁后判断缓存是否能命中，即之前获取锁的进程是否修改redis
-            String s = stringRedisTemplate.opsForValue().get(key);
-            if (StrUtil.isNotBlank(s)){
-                r = JSONUtil.toBean(s, type);
+            byte[] s = byteRedisTemplate.opsForValue().get(key);
+            r = decode(s, type);
+            if (r != null){
+                putLocal(key, r);
                 return r;
             }
-            // 如果redis中为""空字符串,返回失败
-            if (s != null){
+            // 如果redis中为空值标记,返回失败
+            if (isNull(s)){
                 return null;
             }
 
@@ -212,12 +533,13 @@ public class CacheClient {
             // 4.3.数据库中不存在，返回错误信息
             if (r == null){
                 // 把空值写到redis，防止缓存穿透
-                stringRedisTemplate.opsForValue().set(key,"",time,unit);
+                setNull(key,time,unit);
                 return null;
             }
 
             // 4.4.存在，将查询的数据放到redis中
-            stringRedisTemplate.opsForValue().set(key,JSONUtil.toJsonStr(r), time,unit);
+            this.set(key, r, time, unit);
+            putLocal(key, r);
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }finally {
@@ -229,6 +551,284 @@ public class CacheClient {
         return r;
     }
 
+    /**
+     * 根据指定的key查询缓存，未命中时在JVM内合并同一个key的并发请求（single-flight）：
+     * 只有一个leader线程去获取分布式锁并重建缓存，其余线程等待同一个future，等待时间有上限，不再递归重试
+     * @param keyPrefix
+     * @param id
+     * @param type
+     * @param dbFallback
+     * @param time
+     * @param unit
+     * @return
+     * @param <R>
+     * @param <ID>
+     */
+    public <R,ID> R queryWithSingleFlight(
+            String keyPrefix, ID id, Class<R> type, Function<ID,R> dbFallback, Long time, TimeUnit unit){
+        String key = keyPrefix + id;
+
+        // 1.先查一级缓存
+        R local = getLocal(key, type);
+        if (local != null) {
+            return local;
+        }
+
+        // 布隆过滤器判定不存在，直接返回
+        if (!mightExist(keyPrefix, id)) {
+            return null;
+        }
+
+        // 2.在redis中查询
+        byte[] raw = byteRedisTemplate.opsForValue().get(key);
+        R cached = decode(raw, type);
+        if (cached != null){
+            putLocal(key, cached);
+            return cached;
+        }
+        // redis中为空值标记,返回null
+        if (isNull(raw)){
+            return null;
+        }
+
+        // 3.未命中，同一个key只允许一个线程获取分布式锁去重建
+        return singleFlight(key, type,
+                () -> rebuildWithLock(key, id, type, dbFallback, time, unit),
+                () -> {
+                    // leader仍未完成，与其他实例一样通过分布式锁等待重建结果，不直接查询数据库
+                    log.warn("等待缓存重建超时，通过重建锁等待，key：{}", key);
+                    return rebuildWithLock(key, id, type, dbFallback, time, unit);
+                });
+    }
+
+    /**
+     * 进程内合并同一个key的并发未命中：第一个线程成为leader执行load，其余线程等待其结果
+     * @param key
+     * @param type
+     * @param load leader执行的重建
+     * @param onTimeout follower等待超时后执行
+     */
+    private <R> R singleFlight(String key, Class<R> type, Supplier<R> load, Supplier<R> onTimeout) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = inFlightLoads.putIfAbsent(key, future);
+        if (inFlight != null) {
+            // 已有leader在重建，有限时间内等待其结果
+            return awaitInFlight(inFlight, type, onTimeout);
+        }
+
+        // 当前线程成为leader
+        try {
+            R r = load.get();
+            future.complete(r);
+            return r;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightLoads.remove(key, future);
+        }
+    }
+
+    /**
+     * follower最多等待 max-wait-millis 获取leader的重建结果，超时后执行onTimeout，不直接失败
+     */
+    private <R> R awaitInFlight(CompletableFuture<Object> inFlight, Class<R> type, Supplier<R> onTimeout) {
+        try {
+            Object value = inFlight.get(singleFlightMaxWaitMillis, TimeUnit.MILLISECONDS);
+            return type.isInstance(value) ? type.cast(value) : null;
+        } catch (TimeoutException e) {
+            return onTimeout.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * leader获取分布式锁后重建缓存；若锁被其他实例持有，则在有限时间内轮询redis等待其写入
+     */
+    private <R,ID> R rebuildWithLock(
+            String key, ID id, Class<R> type, Function<ID,R> dbFallback, Long time, TimeUnit unit) {
+        String lockKey = LOCK_SHOP_KEY + id;
+        long deadline = System.currentTimeMillis() + singleFlightMaxWaitMillis;
+        while (!trylock(lockKey)) {
+            // 其他实例正在重建，等待其写入redis
+            byte[] raw = byteRedisTemplate.opsForValue().get(key);
+            R cached = decode(raw, type);
+            if (cached != null) {
+                putLocal(key, cached);
+                return cached;
+            }
+            if (isNull(raw)) {
+                return null;
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                // 超过等待上限，直接查询数据库，不再等待
+                return loadAndCache(key, id, dbFallback, time, unit);
+            }
+            try {
+                Thread.sleep(SINGLE_FLIGHT_RETRY_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+        try {
+            // 获取锁后再次检查，其他实例可能已经完成重建
+            byte[] raw = byteRedisTemplate.opsForValue().get(key);
+            R cached = decode(raw, type);
+            if (cached != null) {
+                putLocal(key, cached);
+                return cached;
+            }
+            if (isNull(raw)) {
+                return null;
+            }
+            return loadAndCache(key, id, dbFallback, time, unit);
+        } finally {
+            unlock(lockKey);
+        }
+    }
+
+    /**
+     * 查询数据库并写入缓存，数据不存在时写入空值防止缓存穿透
+     */
+    private <R,ID> R loadAndCache(String key, ID id, Function<ID,R> dbFallback, Long time, TimeUnit unit) {
+        R r = dbFallback.apply(id);
+        if (r == null) {
+            setNull(key, CACHE_NULL_TTL, TimeUnit.MINUTES);
+            return null;
+        }
+        this.set(key, r, time, unit);
+        putLocal(key, r);
+        return r;
+    }
+
+    /**
+     * 批量查询缓存：一次MGET读取redis，未命中的id一次性交给bulkDbFallback查询数据库，再以pipeline批量写回
+     * @param keyPrefix
+     * @param ids
+     * @param type
+     * @param bulkDbFallback 根据一批id查询数据库，返回id到数据的映射，不存在的id不出现在结果中
+     * @param time
+     * @param unit
+     * @return 按ids顺序排列的id到数据的映射，不存在的id不出现在结果中
+     * @param <R>
+     * @param <ID>
+     */
+    public <R,ID> Map<ID,R> queryMany(
+            String keyPrefix, Collection<ID> ids, Class<R> type,
+            Function<Collection<ID>, Map<ID,R>> bulkDbFallback, Long time, TimeUnit unit){
+        Map<ID,R> result = new LinkedHashMap<>();
+        if (ids == null || ids.isEmpty()) {
+            return result;
+        }
+
+        // 1.先查一级缓存
+        List<ID> remoteIds = new ArrayList<>();
+        for (ID id : new LinkedHashSet<>(ids)) {
+            R local = getLocal(keyPrefix + id, type);
+            if (local != null) {
+                result.put(id, local);
+            } else {
+                remoteIds.add(id);
+            }
+        }
+        if (remoteIds.isEmpty()) {
+            return result;
+        }
+
+        // 2.一次MGET查询redis
+        List<String> keys = new ArrayList<>(remoteIds.size());
+        for (ID id : remoteIds) {
+            keys.add(keyPrefix + id);
+        }
+        List<byte[]> values = byteRedisTemplate.opsForValue().multiGet(keys);
+        List<ID> missIds = new ArrayList<>();
+        for (int i = 0; i < remoteIds.size(); i++) {
+            byte[] raw = values == null ? null : values.get(i);
+            R cached = decode(raw, type);
+            if (cached != null) {
+                putLocal(keys.get(i), cached);
+                result.put(remoteIds.get(i), cached);
+            } else if (!isNull(raw)) {
+                missIds.add(remoteIds.get(i));
+            }
+        }
+        if (missIds.isEmpty()) {
+            return orderBy(ids, result);
+        }
+
+        // 3.未命中的id一次查询数据库
+        Map<ID,R> loaded = bulkDbFallback.apply(missIds);
+        Map<String, byte[]> writes = new LinkedHashMap<>();
+        for (ID id : missIds) {
+            R r = loaded == null ? null : loaded.get(id);
+            if (r != null) {
+                result.put(id, r);
+                putLocal(keyPrefix + id, r);
+                writes.put(keyPrefix + id, codec.encode(r));
+            } else {
+                // 数据库中不存在，写入空值防止缓存穿透
+                writes.put(keyPrefix + id, NULL_VALUE);
+            }
+        }
+
+        // 4.以pipeline批量写回redis
+        pipelineSet(writes, time, unit);
+        return orderBy(ids, result);
+    }
+
+    /**
+     * 以pipeline批量写入多个缓存，并且设置TTL
+     * @param values key到数据的映射
+     * @param time
+     * @param unit
+     */
+    public void setMany(Map<String, ?> values, Long time, TimeUnit unit) {
+        Map<String, byte[]> writes = new LinkedHashMap<>();
+        for (Map.Entry<String, ?> entry : values.entrySet()) {
+            writes.put(entry.getKey(), codec.encode(entry.getValue()));
+        }
+        pipelineSet(writes, time, unit);
+    }
+
+    /**
+     * pipeline批量写入已编码的值，TTL随机浮动，空值标记使用CACHE_NULL_TTL
+     */
+    private void pipelineSet(Map<String, byte[]> writes, Long time, TimeUnit unit) {
+        if (writes.isEmpty()) {
+            return;
+        }
+        Expiration nullTtl = Expiration.from(CACHE_NULL_TTL, TimeUnit.MINUTES);
+        byteRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Map.Entry<String, byte[]> write : writes.entrySet()) {
+                byte[] value = write.getValue();
+                // 每个key单独随机TTL，批量写入的数据不会在同一时刻过期
+                Expiration ttl = value.length == 0 ? nullTtl : Expiration.milliseconds(jitter(time, unit));
+                connection.stringCommands().set(write.getKey().getBytes(StandardCharsets.UTF_8), value,
+                        ttl, RedisStringCommands.SetOption.upsert());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 按请求的id顺序重新排列结果
+     */
+    private static <R,ID> Map<ID,R> orderBy(Collection<ID> ids, Map<ID,R> values) {
+        Map<ID,R> ordered = new LinkedHashMap<>();
+        for (ID id : ids) {
+            R r = values.get(id);
+            if (r != null) {
+                ordered.put(id, r);
+            }
+        }
+        return ordered;
+    }
+
     /**
      * 互斥锁上锁
      * @param key
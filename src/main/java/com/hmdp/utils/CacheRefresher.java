@@ -0,0 +1,184 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 全局共享的缓存重建调度器
+ * 1.有界队列 + 按key去重 + 每秒限流，避免重建请求压垮数据库
+ * 2.统计逻辑过期key的访问频率，在热点key到达逻辑过期时间之前提前重建（refresh-ahead）
+ */
+@Slf4j
+@Component
+public class CacheRefresher {
+
+    // 连续多少个统计周期没有访问后不再跟踪该key
+    private static final int IDLE_ROUNDS_BEFORE_EVICT = 60;
+
+    // 重建线程池
+    private final ThreadPoolExecutor executor;
+
+    // 扫描热点key的定时线程
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            r -> new Thread(r, "cache-refresh-scheduler"));
+
+    // 已提交且尚未完成的key
+    private final Set<String> pendingKeys = ConcurrentHashMap.newKeySet();
+
+    // 正在跟踪访问频率的key
+    private final Map<String, TrackedKey> trackedKeys = new ConcurrentHashMap<>();
+
+    @Value("${hmdp.cache.refresh.max-per-second:50}")
+    private int maxPerSecond;
+
+    @Value("${hmdp.cache.refresh.ahead-millis:5000}")
+    private long aheadMillis;
+
+    @Value("${hmdp.cache.refresh.hot-threshold:10}")
+    private long hotThreshold;
+
+    @Value("${hmdp.cache.refresh.scan-interval-millis:1000}")
+    private long scanIntervalMillis;
+
+    @Value("${hmdp.cache.refresh.max-tracked-keys:10000}")
+    private int maxTrackedKeys;
+
+    // 限流：当前秒及其已发放的许可数
+    private long currentSecond;
+    private int permitsUsed;
+
+    public CacheRefresher(@Value("${hmdp.cache.refresh.threads:4}") int threads,
+                          @Value("${hmdp.cache.refresh.queue-capacity:1000}") int queueCapacity) {
+        AtomicInteger index = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> new Thread(r, "cache-refresh-" + index.incrementAndGet()),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PostConstruct
+    private void init() {
+        scheduler.scheduleWithFixedDelay(this::refreshHotKeys, scanIntervalMillis, scanIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        scheduler.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    /**
+     * 提交重建任务。同一个key同时只会有一个任务，超过限流或队列已满时直接放弃
+     * @param key
+     * @param task
+     * @return 是否提交成功
+     */
+    public boolean submit(String key, Runnable task) {
+        if (!pendingKeys.add(key)) {
+            return false;
+        }
+        if (!tryAcquirePermit()) {
+            pendingKeys.remove(key);
+            return false;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    log.error("缓存重建失败，key：{}", key, e);
+                } finally {
+                    pendingKeys.remove(key);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            pendingKeys.remove(key);
+            log.warn("缓存重建队列已满，放弃重建，key：{}", key);
+            return false;
+        }
+    }
+
+    /**
+     * 记录一次逻辑过期key的访问
+     * @param key
+     * @param expireAt 当前缓存数据的逻辑过期时间（毫秒时间戳）
+     * @param reloader 重建该key的任务
+     */
+    public void recordAccess(String key, long expireAt, Runnable reloader) {
+        TrackedKey tracked = trackedKeys.get(key);
+        if (tracked == null) {
+            if (trackedKeys.size() >= maxTrackedKeys) {
+                return;
+            }
+            tracked = trackedKeys.computeIfAbsent(key, k -> new TrackedKey(reloader));
+        }
+        tracked.hits.increment();
+        tracked.expireAt = expireAt;
+    }
+
+    /**
+     * 扫描跟踪的key，对即将过期的热点key提前重建
+     */
+    private void refreshHotKeys() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, TrackedKey>> iterator = trackedKeys.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, TrackedKey> entry = iterator.next();
+            TrackedKey tracked = entry.getValue();
+            long hits = tracked.hits.sumThenReset();
+            if (hits == 0) {
+                if (++tracked.idleRounds >= IDLE_ROUNDS_BEFORE_EVICT) {
+                    iterator.remove();
+                }
+                continue;
+            }
+            tracked.idleRounds = 0;
+            if (hits >= hotThreshold && tracked.expireAt - now <= aheadMillis
+                    && submit(entry.getKey(), tracked.reloader)) {
+                // 重建完成后由下一次访问更新过期时间，在此之前不再重复提交
+                tracked.expireAt = Long.MAX_VALUE;
+            }
+        }
+    }
+
+    private synchronized boolean tryAcquirePermit() {
+        long second = System.currentTimeMillis() / 1000;
+        if (second != currentSecond) {
+            currentSecond = second;
+            permitsUsed = 0;
+        }
+        if (permitsUsed >= maxPerSecond) {
+            return false;
+        }
+        permitsUsed++;
+        return true;
+    }
+
+    private static class TrackedKey {
+        private final LongAdder hits = new LongAdder();
+        private final Runnable reloader;
+        private volatile long expireAt;
+        private int idleRounds;
+
+        TrackedKey(Runnable reloader) {
+            this.reloader = reloader;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.dto.HotKeyDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 热点key探测
+ * 使用滑动窗口的count-min sketch无锁统计key的访问次数：窗口被划分为多个时间片，每个时间片一个sketch，
+ * 定时清空最旧的时间片；估算值为各行在整个窗口内计数之和的最小值。每行的下标由key的64位murmur3哈希（每行不同的种子）取模得到。
+ * 估算值超过阈值的key被标记为热点。关闭一级缓存时，热点key的数据在进程内保存一份短TTL的副本，
+ * 避免同一个key的请求全部打到一个redis分片；开启一级缓存时热点key由一级缓存承接，不再保存副本。
+ */
+@Slf4j
+@Component
+public class HotKeyDetector {
+
+    // 每行哈希的种子
+    private static final int[] SEEDS = {
+            0x9E3779B9, 0xC2B2AE3D, 0x165667B1, 0xD6E8FEB8,
+            0xFF51AFD7, 0xC4CEB9FE, 0x27D4EB2F, 0x94D049BB
+    };
+
+    private final boolean enabled;
+
+    private final int depth;
+
+    private final int width;
+
+    // 时间片个数
+    private final int slots;
+
+    // 每个时间片的长度
+    private final long slotMillis;
+
+    // 每个时间片一个 depth * width 的计数矩阵
+    private final AtomicLongArray[] sketches;
+
+    // 窗口内访问次数达到该值即视为热点
+    private final long threshold;
+
+    // 当前写入的时间片
+    private volatile int currentSlot;
+
+    // 热点key及其探测信息，一段时间内不再被访问到阈值则自动移除
+    private final Cache<String, HotKeyDTO> hotKeys;
+
+    // 热点key的进程内副本，仅在关闭一级缓存时使用
+    private final Cache<String, Object> replicas;
+
+    private final ScheduledExecutorService rotator = Executors.newSingleThreadScheduledExecutor(
+            r -> new Thread(r, "hot-key-rotator"));
+
+    private final Counter promotions;
+
+    public HotKeyDetector(MeterRegistry meterRegistry,
+                          @Value("${hmdp.cache.hot-key.enabled:true}") boolean enabled,
+                          @Value("${hmdp.cache.hot-key.threshold:500}") long threshold,
+                          @Value("${hmdp.cache.hot-key.window-seconds:5}") int windowSeconds,
+                          @Value("${hmdp.cache.hot-key.sketch-depth:4}") int depth,
+                          @Value("${hmdp.cache.hot-key.sketch-width:2048}") int width,
+                          @Value("${hmdp.cache.hot-key.replica-ttl-millis:2000}") long replicaTtlMillis,
+                          @Value("${hmdp.cache.hot-key.max-replicas:1000}") long maxReplicas) {
+        this.enabled = enabled;
+        this.threshold = threshold;
+        this.depth = Math.min(depth, SEEDS.length);
+        this.width = width;
+        // 多一个时间片用于轮换时提前清空
+        this.slots = Math.max(1, windowSeconds) + 1;
+        this.slotMillis = 1000L;
+        this.sketches = new AtomicLongArray[slots];
+        for (int i = 0; i < slots; i++) {
+            sketches[i] = new AtomicLongArray(this.depth * width);
+        }
+        this.hotKeys = Caffeine.newBuilder()
+                .maximumSize(maxReplicas)
+                .expireAfterWrite(windowSeconds * 2L, TimeUnit.SECONDS)
+                .build();
+        this.replicas = Caffeine.newBuilder()
+                .maximumSize(maxReplicas)
+                .expireAfterWrite(replicaTtlMillis, TimeUnit.MILLISECONDS)
+                .build();
+        this.promotions = meterRegistry.counter("cache.hot_key.promotions");
+        meterRegistry.gauge("cache.hot_key.count", hotKeys, cache -> cache.estimatedSize());
+    }
+
+    @PostConstruct
+    private void init() {
+        if (enabled) {
+            rotator.scheduleAtFixedRate(this::rotate, slotMillis, slotMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    private void destroy() {
+        rotator.shutdownNow();
+    }
+
+    /**
+     * 记录一次访问
+     * @param key
+     * @return 该key当前是否为热点
+     */
+    public boolean record(String key) {
+        if (!enabled) {
+            return false;
+        }
+        int slot = currentSlot;
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int index = row * width + indexOf(bytes, row);
+            sketches[slot].incrementAndGet(index);
+            long sum = 0;
+            for (AtomicLongArray sketch : sketches) {
+                sum += sketch.get(index);
+            }
+            estimate = Math.min(estimate, sum);
+        }
+        HotKeyDTO hotKey = hotKeys.getIfPresent(key);
+        if (estimate < threshold) {
+            return hotKey != null;
+        }
+        if (hotKey == null) {
+            promote(key, estimate);
+        } else {
+            // 仍然是热点，刷新存活时间
+            hotKey.setEstimate(estimate);
+            hotKeys.put(key, hotKey);
+        }
+        return true;
+    }
+
+    /**
+     * 是否为热点key
+     */
+    public boolean isHot(String key) {
+        return enabled && hotKeys.getIfPresent(key) != null;
+    }
+
+    /**
+     * 读取热点key的进程内副本
+     */
+    public Object getReplica(String key) {
+        return replicas.getIfPresent(key);
+    }
+
+    /**
+     * 保存热点key的进程内副本
+     */
+    public void putReplica(String key, Object value) {
+        replicas.put(key, value);
+    }
+
+    /**
+     * 数据更新时清理副本
+     */
+    public void invalidate(String key) {
+        replicas.invalidate(key);
+    }
+
+    /**
+     * 当前的热点key，按访问次数降序
+     */
+    public List<HotKeyDTO> hotKeys() {
+        List<HotKeyDTO> list = new ArrayList<>(hotKeys.asMap().values());
+        list.sort(Comparator.comparingLong(HotKeyDTO::getEstimate).reversed());
+        return list;
+    }
+
+    private void promote(String key, long estimate) {
+        HotKeyDTO hotKey = new HotKeyDTO();
+        hotKey.setKey(key);
+        hotKey.setEstimate(estimate);
+        hotKey.setPromotedAt(LocalDateTime.ofInstant(Instant.now(), ZoneId.systemDefault()));
+        if (hotKeys.asMap().putIfAbsent(key, hotKey) == null) {
+            promotions.increment();
+            log.info("探测到热点key：{}，窗口内访问次数约为：{}", key, estimate);
+        }
+    }
+
+    /**
+     * 切换到下一个时间片，并清空再下一个时间片（即窗口中最旧的时间片）
+     */
+    private void rotate() {
+        int next = (currentSlot + 1) % slots;
+        currentSlot = next;
+        AtomicLongArray oldest = sketches[(next + 1) % slots];
+        for (int i = 0; i < oldest.length(); i++) {
+            oldest.set(i, 0);
+        }
+    }
+
+    private int indexOf(byte[] key, int row) {
+        long h = MurmurHash.hash64(key, key.length, SEEDS[row]);
+        return (int) ((h & Long.MAX_VALUE) % width);
+    }
+}
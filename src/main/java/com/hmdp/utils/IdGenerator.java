@@ -0,0 +1,14 @@
+package com.hmdp.utils;
+
+/**
+ * 全局唯一id生成器
+ */
+public interface IdGenerator {
+
+    /**
+     * 生成全局唯一、按时间递增的id
+     * @param keyPrefix 业务前缀，不同业务的id相互独立
+     * @return
+     */
+    long nextId(String keyPrefix);
+}
@@ -0,0 +1,237 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.bean.copier.CopyOptions;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.dto.UserDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.LOGIN_LOGOUT_CHANNEL;
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_KEY;
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_TTL;
+
+/**
+ * 登录token到用户信息的解析
+ * 1.进程内缓存token对应的UserDTO及其在redis中的过期时间，命中时不访问redis；未命中时一次pipeline读取 HGETALL + PTTL
+ * 2.剩余有效期低于阈值时才续期，续期请求先登记，由定时任务批量以pipeline执行 PEXPIRE
+ * 3.登出时删除redis中的token，并通过pub/sub通知所有实例清理本地缓存；消息可能丢失，因此本地缓存有存活时间
+ * 4.不存在的token记录在单独的小容量、短存活时间的缓存中，大量无效token不会挤掉有效会话
+ */
+@Slf4j
+@Component
+public class LoginSessions implements TokenResolver {
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final RedisMessageListenerContainer listenerContainer;
+
+    private final Cache<String, Session> sessions;
+
+    // 不存在的token，短时间内不再访问redis
+    private final Cache<String, Boolean> absentTokens;
+
+    // token在redis中的有效期
+    private final long ttlMillis;
+
+    // 剩余有效期低于该值时续期
+    private final long refreshThresholdMillis;
+
+    private final long refreshIntervalMillis;
+
+    // 等待批量续期的token
+    private final Set<String> pendingRefresh = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "login-session-refresher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public LoginSessions(StringRedisTemplate stringRedisTemplate,
+                         RedisMessageListenerContainer listenerContainer,
+                         @Value("${hmdp.login.local.maximum-size:100000}") long localMaximumSize,
+                         @Value("${hmdp.login.local.expire-seconds:300}") long localExpireSeconds,
+                         @Value("${hmdp.login.absent.maximum-size:10000}") long absentMaximumSize,
+                         @Value("${hmdp.login.absent.expire-seconds:5}") long absentExpireSeconds,
+                         @Value("${hmdp.login.refresh-ratio:0.5}") double refreshRatio,
+                         @Value("${hmdp.login.refresh-interval-millis:1000}") long refreshIntervalMillis) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.sessions = Caffeine.newBuilder()
+                .maximumSize(localMaximumSize)
+                .expireAfterWrite(localExpireSeconds, TimeUnit.SECONDS)
+                .build();
+        this.absentTokens = Caffeine.newBuilder()
+                .maximumSize(absentMaximumSize)
+                .expireAfterWrite(absentExpireSeconds, TimeUnit.SECONDS)
+                .build();
+        this.ttlMillis = TimeUnit.MINUTES.toMillis(LOGIN_USER_TTL);
+        this.refreshThresholdMillis = (long) (ttlMillis * refreshRatio);
+        this.refreshIntervalMillis = refreshIntervalMillis;
+    }
+
+    @PostConstruct
+    private void init() {
+        listenerContainer.addMessageListener(
+                (message, pattern) -> sessions.invalidate(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(LOGIN_LOGOUT_CHANNEL));
+        refresher.scheduleWithFixedDelay(this::flushRefresh, refreshIntervalMillis, refreshIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        refresher.shutdownNow();
+    }
+
+    /**
+     * 保存登录信息：写入redis hash并设置有效期，同时放入本地缓存
+     * @param token
+     * @param user
+     */
+    public void save(String token, UserDTO user) {
+        // 这里将UserDTO中的属性转为string类型的，新用户没有头像，跳过空值
+        Map<String, String> userMap = new HashMap<>();
+        BeanUtil.beanToMap(user, new HashMap<>(), CopyOptions.create().setIgnoreNullValue(true))
+                .forEach((field, value) -> userMap.put(field, value.toString()));
+        String key = LOGIN_USER_KEY + token;
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.hMSet(key, userMap);
+            conn.pExpire(key, ttlMillis);
+            return null;
+        });
+        sessions.put(token, new Session(user, System.currentTimeMillis() + ttlMillis));
+        absentTokens.invalidate(token);
+    }
+
+    /**
+     * 解析token
+     * @param token
+     * @return token不存在或已过期时返回null
+     */
+    @Override
+    public UserDTO resolve(String token) {
+        if (absentTokens.getIfPresent(token) != null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        // 加载期间收到的登出通知会等待加载完成后再移除，不会把已登出的会话重新放入本地缓存
+        Session session = sessions.get(token, k -> load(k, now));
+        if (session == null) {
+            absentTokens.put(token, Boolean.TRUE);
+            return null;
+        }
+        long remaining = session.expireAt - now;
+        if (remaining <= 0) {
+            // 本地记录的有效期已过，可能已被其他实例续期，下次重新从redis读取
+            sessions.invalidate(token);
+            return null;
+        }
+        if (remaining < refreshThresholdMillis) {
+            pendingRefresh.add(token);
+        }
+        return session.user;
+    }
+
+    /**
+     * 登出：删除redis中的token并通知所有实例
+     * @param token
+     */
+    public void invalidate(String token) {
+        stringRedisTemplate.delete(LOGIN_USER_KEY + token);
+        pendingRefresh.remove(token);
+        sessions.invalidate(token);
+        stringRedisTemplate.convertAndSend(LOGIN_LOGOUT_CHANNEL, token);
+    }
+
+    /**
+     * 从redis读取会话，token不存在时返回null，不放入会话缓存
+     */
+    private Session load(String token, long now) {
+        String key = LOGIN_USER_KEY + token;
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            conn.hGetAll(key);
+            conn.pTtl(key);
+            return null;
+        });
+        @SuppressWarnings("unchecked")
+        Map<String, String> map = (Map<String, String>) results.get(0);
+        Long pttl = (Long) results.get(1);
+        if (map == null || map.isEmpty() || pttl == null || pttl == -2) {
+            return null;
+        }
+        // 将查询到的hash数据转换为UserDTO对象
+        UserDTO user = BeanUtil.fillBeanWithMap(map, new UserDTO(), false);
+        // -1 表示没有过期时间，视为需要续期
+        long expireAt = pttl < 0 ? now : now + pttl;
+        return new Session(user, Math.max(expireAt, now + 1));
+    }
+
+    /**
+     * 批量续期登记的token，并更新本地记录的过期时间
+     */
+    private void flushRefresh() {
+        if (pendingRefresh.isEmpty()) {
+            return;
+        }
+        List<String> tokens = new ArrayList<>(pendingRefresh);
+        pendingRefresh.removeAll(tokens);
+        try {
+            long expireAt = System.currentTimeMillis() + ttlMillis;
+            List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection conn = (StringRedisConnection) connection;
+                for (String token : tokens) {
+                    conn.pExpire(LOGIN_USER_KEY + token, ttlMillis);
+                }
+                return null;
+            });
+            for (int i = 0; i < tokens.size(); i++) {
+                String token = tokens.get(i);
+                if (Boolean.TRUE.equals(results.get(i))) {
+                    Session session = sessions.getIfPresent(token);
+                    if (session != null) {
+                        session.expireAt = expireAt;
+                    }
+                } else {
+                    // token已不存在
+                    sessions.invalidate(token);
+                }
+            }
+        } catch (Exception e) {
+            log.error("批量续期登录token失败，数量：{}", tokens.size(), e);
+        }
+    }
+
+    private static class Session {
+        private final UserDTO user;
+        // token在redis中的过期时间（毫秒时间戳）
+        private volatile long expireAt;
+
+        Session(UserDTO user, long expireAt) {
+            this.user = user;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.hmdp.utils;
+
+import cn.hutool.crypto.SecureUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lua脚本注册中心
+ * 启动时把 resources/lua 下的所有 .lua 文件以 SCRIPT LOAD 预加载到redis，调用时只发送SHA（EVALSHA）；
+ * redis重启或执行过 SCRIPT FLUSH 导致返回 NOSCRIPT 时，自动重新加载后再执行一次。
+ * 每个脚本的执行耗时记录在 redis.script 指标中，以 script 标签区分。
+ */
+@Slf4j
+@Component
+public class LuaScriptRegistry {
+
+    private static final String SCRIPT_LOCATION = "classpath*:lua/*.lua";
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final MeterRegistry meterRegistry;
+
+    // 脚本名（文件名去掉.lua）到脚本的映射
+    private final Map<String, LuaScript> scripts = new ConcurrentHashMap<>();
+
+    public LuaScriptRegistry(StringRedisTemplate stringRedisTemplate, MeterRegistry meterRegistry) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    private void loadAll() throws IOException {
+        Resource[] resources = new PathMatchingResourcePatternResolver().getResources(SCRIPT_LOCATION);
+        for (Resource resource : resources) {
+            String filename = resource.getFilename();
+            if (filename == null) {
+                continue;
+            }
+            String body;
+            try (InputStream in = resource.getInputStream()) {
+                body = StreamUtils.copyToString(in, StandardCharsets.UTF_8);
+            }
+            String name = filename.substring(0, filename.length() - ".lua".length());
+            Timer timer = Timer.builder("redis.script").tag("script", name).register(meterRegistry);
+            LuaScript script = new LuaScript(body, SecureUtil.sha1(body), timer);
+            scripts.put(name, script);
+            try {
+                load(script);
+            } catch (Exception e) {
+                // redis暂不可用时不影响启动，首次执行收到NOSCRIPT时再加载
+                log.warn("预加载Lua脚本失败：{}", name, e);
+            }
+        }
+        log.info("已注册Lua脚本：{}", scripts.keySet());
+    }
+
+    /**
+     * 以EVALSHA执行脚本，收到NOSCRIPT时重新加载后重试一次
+     * @param name 脚本名，即文件名去掉.lua
+     * @param resultType 返回值类型：Long、Boolean、String 或 List
+     * @param keys
+     * @param args
+     * @return
+     * @param <T>
+     */
+    public <T> T execute(String name, Class<T> resultType, List<String> keys, Object... args) {
+        LuaScript script = scripts.get(name);
+        if (script == null) {
+            throw new IllegalArgumentException("Lua脚本不存在：" + name);
+        }
+        byte[][] keysAndArgs = new byte[keys.size() + args.length][];
+        int i = 0;
+        for (String key : keys) {
+            keysAndArgs[i++] = key.getBytes(StandardCharsets.UTF_8);
+        }
+        for (Object arg : args) {
+            keysAndArgs[i++] = String.valueOf(arg).getBytes(StandardCharsets.UTF_8);
+        }
+        ReturnType returnType = ReturnType.fromJavaType(resultType);
+        long begin = System.nanoTime();
+        try {
+            Object result;
+            try {
+                result = evalSha(script, returnType, keys.size(), keysAndArgs);
+            } catch (RuntimeException e) {
+                if (!isNoScript(e)) {
+                    throw e;
+                }
+                log.info("Lua脚本{}未加载，重新加载", name);
+                load(script);
+                result = evalSha(script, returnType, keys.size(), keysAndArgs);
+            }
+            return convert(result, resultType);
+        } finally {
+            script.timer.record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Object evalSha(LuaScript script, ReturnType returnType, int numKeys, byte[][] keysAndArgs) {
+        return stringRedisTemplate.execute((RedisCallback<Object>) connection ->
+                connection.scriptingCommands().evalSha(script.sha, returnType, numKeys, keysAndArgs));
+    }
+
+    private void load(LuaScript script) {
+        stringRedisTemplate.execute((RedisCallback<String>) connection ->
+                connection.scriptingCommands().scriptLoad(script.body.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static boolean isNoScript(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t.getMessage() != null && t.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static <T> T convert(Object result, Class<T> resultType) {
+        if (result instanceof byte[] && resultType == String.class) {
+            return resultType.cast(new String((byte[]) result, StandardCharsets.UTF_8));
+        }
+        return resultType.cast(result);
+    }
+
+    private static class LuaScript {
+        private final String body;
+        private final String sha;
+        private final Timer timer;
+
+        LuaScript(String body, String sha, Timer timer) {
+            this.body = body;
+            this.sha = sha;
+            this.timer = timer;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import cn.hutool.core.lang.hash.MurmurHash;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.BitFieldSubCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.BLOOM_FILTER_KEY;
+
+/**
+ * 基于redis bitmap的布隆过滤器，用于在查询缓存和数据库之前拦截一定不存在的id，解决缓存穿透
+ * 位数组大小和哈希函数个数由预期元素数量和误判率计算得出
+ * 重建时先写入临时key，并登记到 bloom:{name}:rebuilding 集合中：集合非空期间任何实例新增元素时把位下标记录到
+ * bloom:{name}:added，替换前在脚本中回放到临时key，替换后不会丢失重建期间新增的元素。
+ * 同一个过滤器的所有key都带有 {name} hash tag，位于同一个slot，脚本只访问KEYS中声明的key
+ */
+@Slf4j
+@Component
+public class RedisBloomFilter {
+
+    private static final BitFieldSubCommands.BitFieldType BIT = BitFieldSubCommands.BitFieldType.unsigned(1);
+
+    // 每批写入的元素个数
+    private static final int REBUILD_BATCH_SIZE = 1000;
+
+    // 正在重建的临时key集合的后缀
+    private static final String REBUILDING_SUFFIX = ":rebuilding";
+
+    // 重建期间新增元素记录的后缀
+    private static final String ADDED_SUFFIX = ":added";
+
+    // 临时key及其登记的有效期，重建的实例崩溃后自动清理，每写入一批续期一次
+    private static final long REBUILD_TTL_MINUTES = 10L;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final LuaScriptRegistry luaScripts;
+
+    // 位数组大小
+    private final long numBits;
+
+    // 哈希函数个数
+    private final int numHashFunctions;
+
+    // 已完成初始化的过滤器，未初始化的过滤器一律放行
+    private final Set<String> readyFilters = ConcurrentHashMap.newKeySet();
+
+    public RedisBloomFilter(StringRedisTemplate stringRedisTemplate,
+                            LuaScriptRegistry luaScripts,
+                            @Value("${hmdp.bloom.expected-insertions:1000000}") long expectedInsertions,
+                            @Value("${hmdp.bloom.fpp:0.01}") double fpp) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.luaScripts = luaScripts;
+        // m = -n * ln(p) / (ln2)^2
+        this.numBits = Math.max(64L, (long) (-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2))));
+        // k = m / n * ln2
+        this.numHashFunctions = Math.max(1, (int) Math.round((double) numBits / expectedInsertions * Math.log(2)));
+    }
+
+    /**
+     * 判断元素是否可能存在，返回false时元素一定不存在
+     * @param name 过滤器名称
+     * @param id
+     * @return
+     */
+    public boolean mightContain(String name, Object id) {
+        if (!readyFilters.contains(name)) {
+            return true;
+        }
+        BitFieldSubCommands commands = BitFieldSubCommands.create();
+        for (long offset : offsets(id)) {
+            commands = commands.get(BIT).valueAt(offset);
+        }
+        List<Long> bits = stringRedisTemplate.opsForValue().bitField(filterKey(name), commands);
+        if (bits == null) {
+            return true;
+        }
+        for (Long bit : bits) {
+            if (bit == null || bit == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 新增元素
+     * @param name 过滤器名称
+     * @param id
+     */
+    public void add(String name, Object id) {
+        String key = filterKey(name);
+        long[] offsets = offsets(id);
+        Object[] args = new Object[offsets.length + 1];
+        args[0] = String.valueOf(TimeUnit.MINUTES.toSeconds(REBUILD_TTL_MINUTES));
+        for (int i = 0; i < offsets.length; i++) {
+            args[i + 1] = String.valueOf(offsets[i]);
+        }
+        luaScripts.execute("bloom_add", Long.class,
+                Arrays.asList(key, key + REBUILDING_SUFFIX, key + ADDED_SUFFIX), args);
+    }
+
+    /**
+     * 用全量数据重建过滤器：先写入临时key，完成后通过rename原子替换
+     * @param name 过滤器名称
+     * @param ids 按批次提供的全量id
+     */
+    public void rebuild(String name, Iterable<? extends Collection<?>> ids) {
+        String key = filterKey(name);
+        String rebuildingKey = key + REBUILDING_SUFFIX;
+        String tmpKey = key + ":" + UUID.randomUUID().toString(true);
+        // 先创建临时key再登记，登记之后新增的元素都会被记录，替换前回放
+        stringRedisTemplate.opsForValue().setBit(tmpKey, 0, false);
+        stringRedisTemplate.expire(tmpKey, REBUILD_TTL_MINUTES, TimeUnit.MINUTES);
+        stringRedisTemplate.opsForSet().add(rebuildingKey, tmpKey);
+        stringRedisTemplate.expire(rebuildingKey, REBUILD_TTL_MINUTES, TimeUnit.MINUTES);
+        long count = 0;
+        boolean swapped = false;
+        try {
+            for (Collection<?> batch : ids) {
+                writeBatch(tmpKey, batch);
+                count += batch.size();
+                stringRedisTemplate.expire(tmpKey, REBUILD_TTL_MINUTES, TimeUnit.MINUTES);
+                stringRedisTemplate.expire(rebuildingKey, REBUILD_TTL_MINUTES, TimeUnit.MINUTES);
+            }
+            Long result = luaScripts.execute("bloom_swap", Long.class,
+                    Arrays.asList(key, rebuildingKey, key + ADDED_SUFFIX, tmpKey));
+            swapped = result != null && result == 1L;
+            if (!swapped) {
+                log.warn("布隆过滤器[{}]的临时key已过期，放弃本次重建", name);
+                return;
+            }
+            readyFilters.add(name);
+            log.info("布隆过滤器[{}]重建完成，元素个数：{}，位数：{}，哈希函数个数：{}", name, count, numBits, numHashFunctions);
+        } finally {
+            if (!swapped) {
+                stringRedisTemplate.opsForSet().remove(rebuildingKey, tmpKey);
+                stringRedisTemplate.delete(tmpKey);
+            }
+        }
+    }
+
+    /**
+     * 过滤器key，带hash tag使过滤器、临时key和重建记录位于同一个slot
+     */
+    private static String filterKey(String name) {
+        return BLOOM_FILTER_KEY + "{" + name + "}";
+    }
+
+    /**
+     * 以pipeline方式批量写入
+     */
+    private void writeBatch(String key, Collection<?> batch) {
+        int size = 0;
+        BitFieldSubCommands[] pending = new BitFieldSubCommands[Math.min(batch.size(), REBUILD_BATCH_SIZE)];
+        for (Object id : batch) {
+            pending[size++] = setCommands(id);
+            if (size == pending.length) {
+                flush(key, pending, size);
+                size = 0;
+            }
+        }
+        if (size > 0) {
+            flush(key, pending, size);
+        }
+    }
+
+    private void flush(String key, BitFieldSubCommands[] pending, int size) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (int i = 0; i < size; i++) {
+                conn.bitfield(key, pending[i]);
+            }
+            return null;
+        });
+    }
+
+    private BitFieldSubCommands setCommands(Object id) {
+        BitFieldSubCommands commands = BitFieldSubCommands.create();
+        for (long offset : offsets(id)) {
+            commands = commands.set(BIT).valueAt(offset).to(1);
+        }
+        return commands;
+    }
+
+    /**
+     * 双重哈希计算k个位下标：g_i(x) = h1(x) + i * h2(x)
+     */
+    private long[] offsets(Object id) {
+        long[] hash = MurmurHash.hash128(String.valueOf(id));
+        long[] offsets = new long[numHashFunctions];
+        long combined = hash[0];
+        for (int i = 0; i < numHashFunctions; i++) {
+            offsets[i] = (combined & Long.MAX_VALUE) % numBits;
+            combined += hash[1];
+        }
+        return offsets;
+    }
+}
@@ -5,6 +5,10 @@ public class RedisConstants {
     public static final Long LOGIN_CODE_TTL = 2L;
     public static final String LOGIN_USER_KEY = "login:token:";
     public static final Long LOGIN_USER_TTL = 36000L;
+    public static final String LOGIN_LOGOUT_CHANNEL = "login:logout";
+    public static final String LOGIN_REFRESH_KEY = "login:refresh:";
+    public static final String LOGIN_REVOKED_KEY = "login:revoked";
+    public static final String LOGIN_REVOKED_CHANNEL = "login:revoked";
 
     public static final Long CACHE_NULL_TTL = 2L;
 
@@ -14,11 +18,46 @@ public class RedisConstants {
     public static final Long CACHE_SHOP_TYPE_LIST_TTL = 60L;
     public static final String CACHE_SHOP_TYPE_LIST_KEY = "cache:shopType:";
 
+    public static final Long CACHE_USER_TTL = 30L;
+    public static final String CACHE_USER_KEY = "cache:user:";
+
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+
+    public static final String BLOOM_FILTER_KEY = "bloom:";
+    public static final String BLOOM_SHOP_FILTER = "shop";
+    public static final String BLOOM_VOUCHER_FILTER = "voucher";
+
+    public static final String ID_WORKER_KEY = "id:worker:";
+
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
+    public static final String LOCK_BLOG_LIKE_FLUSH_KEY = "lock:blog:like:flush";
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+    public static final String SECKILL_SHARDS_KEY = "seckill:shards:";
+    public static final String SECKILL_SHARDS_CHANNEL = "seckill:shards";
+    public static final String SECKILL_SHARDED_KEY = "seckill:sharded";
+    public static final String SECKILL_OUTBOX_KEY = "seckill:outbox:";
+    public static final String LOCK_SECKILL_OUTBOX_KEY = "lock:seckill:outbox";
+    public static final String SECKILL_WINDOW_KEY = "seckill:window:";
+    public static final String SECKILL_SOLD_OUT_CHANNEL = "seckill:sold-out";
+    public static final String SECKILL_BUCKET_KEY = "seckill:bucket:";
+    public static final String SECKILL_ORDER_STATUS_KEY = "seckill:order:status:";
+    public static final Long SECKILL_ORDER_STATUS_TTL = 24L;
+    public static final String SECKILL_ORDER_DONE_CHANNEL = "seckill:order:done";
+    public static final String SECKILL_ORDER_STREAM = "stream.orders";
+    public static final String SECKILL_ORDER_GROUP = "g1";
+    public static final String SECKILL_ORDER_DEAD_LETTER_STREAM = "stream.orders.dlq";
     public static final String BLOG_LIKED_KEY = "blog:liked:";
+    // 增量hash与写库中的hash使用同一个hash tag，集群模式下才能RENAMENX
+    public static final String BLOG_LIKE_DELTA_KEY = "blog:like:{delta}";
+    public static final String BLOG_LIKE_FLUSHING_KEY = "blog:like:{delta}:flushing";
+    // 博文热度排行，分数为 log10(点赞数) + 发布时间/衰减周期
+    public static final String BLOG_HOT_KEY = "blog:hot";
+    // 每篇博文的点赞数和发布时间项，不在排行中的博文也保留，点赞时据此重新计算分数
+    public static final String BLOG_HOT_LIKES_KEY = "blog:hot:likes";
+    public static final String BLOG_HOT_TIME_KEY = "blog:hot:time";
     public static final String FEED_KEY = "feed:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
     public static final String USER_SIGN_KEY = "sign:";
@@ -1,29 +1,71 @@
 package com.hmdp.utils;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+@Slf4j
 @Component
-public class RedisIdWorker {
+public class RedisIdWorker implements IdGenerator {
 
     //开始时间戳
     private static final long BEGIN_TIMESTAMP=1711843200L;
 
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy:MM:dd");
+
     private StringRedisTemplate stringRedisTemplate;
 
     //序列号的位数
     private static final int COUNT_BITS = 32;
 
+    // 号段模式：一次 INCRBY step 申请一段序列号，在本地用AtomicLong发放
+    private final boolean segmentEnabled;
+
+    // 每个号段的长度
+    private final long segmentStep;
+
+    // 当前号段用掉该比例后异步预取下一个号段
+    private final double prefetchRatio;
+
+    // key为 前缀:日期，每天的计数器独立
+    private final Map<String, SegmentBuffer> buffers = new ConcurrentHashMap<>();
 
-    public RedisIdWorker(StringRedisTemplate stringRedisTemplate) {
+    // 异步预取号段的线程
+    private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "id-segment-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public RedisIdWorker(StringRedisTemplate stringRedisTemplate,
+                         @Value("${hmdp.id.segment.enabled:false}") boolean segmentEnabled,
+                         @Value("${hmdp.id.segment.step:1000}") long segmentStep,
+                         @Value("${hmdp.id.segment.prefetch-ratio:0.8}") double prefetchRatio) {
+        if (segmentStep <= 0) {
+            throw new IllegalArgumentException("号段长度必须大于0");
+        }
+        if (prefetchRatio <= 0 || prefetchRatio >= 1) {
+            throw new IllegalArgumentException("号段预取比例必须在0和1之间");
+        }
         this.stringRedisTemplate = stringRedisTemplate;
+        this.segmentEnabled = segmentEnabled;
+        this.segmentStep = segmentStep;
+        this.prefetchRatio = prefetchRatio;
     }
 
     //获取id
+    @Override
     public long nextId(String keyPrefix){
         //生成时间戳
         LocalDateTime now = LocalDateTime.now();
@@ -32,12 +74,104 @@ public class RedisIdWorker {
 
         //生成序列号
         //获取当前日期，精准到天
-        String date = now.format(DateTimeFormatter.ofPattern("yyyy:MM:dd"));
-        //自增长
-        Long count = stringRedisTemplate.opsForValue().increment("incr:" + keyPrefix + ":" + date);
+        String date = now.format(DATE_FORMATTER);
+        long count;
+        if (segmentEnabled) {
+            //从本地号段中获取
+            count = nextSequence(keyPrefix, date);
+        } else {
+            //自增长
+            count = stringRedisTemplate.opsForValue().increment("incr:" + keyPrefix + ":" + date);
+        }
 
         //拼接并返回
         return timeStamp<<COUNT_BITS | count;
     }
 
+    /**
+     * 从本地号段中获取序列号，号段用尽时切换到预取的下一个号段，没有预取到则同步申请
+     */
+    private long nextSequence(String keyPrefix, String date) {
+        String key = keyPrefix + ":" + date;
+        SegmentBuffer buffer = buffers.get(key);
+        if (buffer == null) {
+            // 新的一天，丢弃该前缀前一天的号段
+            buffers.keySet().removeIf(old -> old.startsWith(keyPrefix + ":") && !old.equals(key));
+            buffer = buffers.computeIfAbsent(key, k -> new SegmentBuffer());
+        }
+        while (true) {
+            Segment segment = buffer.current;
+            if (segment != null) {
+                long sequence = segment.cursor.getAndIncrement();
+                if (sequence <= segment.max) {
+                    if (sequence >= segment.prefetchAt) {
+                        prefetch(buffer, key);
+                    }
+                    return sequence;
+                }
+            }
+            synchronized (buffer) {
+                // 其他线程已经切换了号段
+                if (buffer.current != segment) {
+                    continue;
+                }
+                Segment next = buffer.next;
+                if (next != null) {
+                    buffer.next = null;
+                    buffer.current = next;
+                } else {
+                    buffer.current = allocate(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * 当前号段使用到预取点后，异步申请下一个号段，同一时刻只有一个预取任务
+     */
+    private void prefetch(SegmentBuffer buffer, String key) {
+        if (buffer.next != null || !buffer.loading.compareAndSet(false, true)) {
+            return;
+        }
+        prefetchExecutor.execute(() -> {
+            try {
+                if (buffer.next == null) {
+                    buffer.next = allocate(key);
+                }
+            } catch (Exception e) {
+                log.error("预取号段失败：{}", key, e);
+            } finally {
+                buffer.loading.set(false);
+            }
+        });
+    }
+
+    /**
+     * 一次 INCRBY 申请 (end - step, end] 这一段序列号
+     */
+    private Segment allocate(String key) {
+        Long end = stringRedisTemplate.opsForValue().increment("incr:" + key, segmentStep);
+        return new Segment(end - segmentStep + 1, end, (long) (segmentStep * prefetchRatio));
+    }
+
+    private static class SegmentBuffer {
+        private volatile Segment current;
+        private volatile Segment next;
+        private final AtomicBoolean loading = new AtomicBoolean();
+    }
+
+    private static class Segment {
+        // 下一个待发放的序列号
+        private final AtomicLong cursor;
+        private final long max;
+        // 发放到该序列号时开始预取
+        private final long prefetchAt;
+
+        Segment(long min, long max, long prefetchOffset) {
+            this.cursor = new AtomicLong(min);
+            this.max = max;
+            this.prefetchAt = min + prefetchOffset;
+        }
+    }
+
 }
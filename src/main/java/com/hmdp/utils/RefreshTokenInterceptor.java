@@ -1,34 +1,32 @@
 package com.hmdp.utils;
 
-import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.StrUtil;
 import com.hmdp.dto.UserDTO;
-import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.web.servlet.HandlerInterceptor;
-import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.util.Map;
-import java.util.concurrent.TimeUnit;
-
-import static com.hmdp.utils.RedisConstants.*;
 
 /**
  * @author vizzinii
  * &#064;create  2025-01-16 14:59
  * 这是第一个拦截器。第一个拦截器功能是对存在的token进行刷新、对token不存在的请求不操作，之后全部放行到第二个拦截器。
+ * 长轮询等异步请求开始后不会调用postHandle，因此在afterConcurrentHandlingStarted和afterCompletion中都要移除用户，
+ * 否则用户会留在tomcat线程的ThreadLocal中，被该线程处理的下一个请求冒用。
  */
-public class RefreshTokenInterceptor implements HandlerInterceptor {
+public class RefreshTokenInterceptor implements AsyncHandlerInterceptor {
 
-    private StringRedisTemplate stringRedisTemplate;
+    private TokenResolver tokenResolver;
 
-    public RefreshTokenInterceptor(StringRedisTemplate stringRedisTemplate) {
-        this.stringRedisTemplate = stringRedisTemplate;
+    public RefreshTokenInterceptor(TokenResolver tokenResolver) {
+        this.tokenResolver = tokenResolver;
     }
 
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        // 清除该线程上可能残留的用户
+        UserHolder.removeUser();
+
         // 获取token
         String token = request.getHeader("authorization");
 
@@ -37,29 +35,30 @@ public class RefreshTokenInterceptor implements HandlerInterceptor {
             return true;
         }
 
-        // redis获取用户信息
-        Map<Object, Object> map = stringRedisTemplate.opsForHash().entries(LOGIN_USER_KEY + token);
+        // 获取用户信息：redis会话优先读本地缓存，签名token在本地校验
+        UserDTO userDTO = tokenResolver.resolve(token);
 
         // 用户是否存在
-        if (map.isEmpty()){
+        if (userDTO == null){
             //不存在：放行
             return true;
         }
-        // 将查询到的hash数据转换为UserDTO对象
-        UserDTO userDTO = BeanUtil.fillBeanWithMap(map, new UserDTO(), false);
 
         // 存在，把用户放到ThreadLocal中
         UserHolder.saveUser(userDTO);
 
-        // 刷新token有效期
-        stringRedisTemplate.expire(LOGIN_USER_KEY+token,LOGIN_USER_TTL, TimeUnit.MINUTES);
-
         // 全部放行
         return true;
     }
 
     @Override
-    public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler, ModelAndView modelAndView) throws Exception {
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        // 异步请求开始，当前线程即将归还线程池，移除用户
+        UserHolder.removeUser();
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) throws Exception {
         //移除用户
         UserHolder.removeUser();
     }
@@ -0,0 +1,149 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.SeckillAdmissionProperties;
+import com.hmdp.config.SeckillAdmissionProperties.Rate;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_BUCKET_KEY;
+
+/**
+ * 秒杀准入控制
+ * 全局和每张优惠券各有一个redis令牌桶（token_bucket.lua），所有实例共享速率；
+ * 每个实例在前面放一个无锁的本地预取桶：一次从redis申请 prefetch 个令牌，本地用CAS逐个发放，
+ * 同一时刻只有一个线程去redis申请，其他线程最多等待 fetch-wait-millis 后从本地桶获取；
+ * redis桶为空时在下一个令牌产生之前直接本地拒绝，超出速率的请求不会占用tomcat线程等待redis。
+ */
+@Slf4j
+@Component
+public class SeckillAdmission {
+
+    private static final String GLOBAL = "global";
+
+    private final SeckillAdmissionProperties properties;
+
+    private final LuaScriptRegistry luaScripts;
+
+    private final Map<String, LocalBucket> buckets = new ConcurrentHashMap<>();
+
+    private final Counter accepted;
+
+    private final Counter rejectedByVoucher;
+
+    private final Counter rejectedByGlobal;
+
+    public SeckillAdmission(SeckillAdmissionProperties properties, LuaScriptRegistry luaScripts, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.luaScripts = luaScripts;
+        this.accepted = meterRegistry.counter("seckill.admission.accepted");
+        this.rejectedByVoucher = meterRegistry.counter("seckill.admission.rejected", "scope", "voucher");
+        this.rejectedByGlobal = meterRegistry.counter("seckill.admission.rejected", "scope", "global");
+    }
+
+    /**
+     * 申请一次秒杀请求的准入，先过优惠券的令牌桶，再过全局令牌桶
+     * @param voucherId
+     * @return 是否放行
+     */
+    public boolean tryAcquire(Long voucherId) {
+        if (!properties.isEnabled()) {
+            return true;
+        }
+        String name = voucherId.toString();
+        if (!tryAcquire(name, properties.rateOf(voucherId))) {
+            rejectedByVoucher.increment();
+            return false;
+        }
+        if (!tryAcquire(GLOBAL, properties.getGlobal())) {
+            // 被全局桶拒绝，归还已取得的优惠券令牌，避免该优惠券的配额被白白消耗
+            buckets.get(name).tokens.incrementAndGet();
+            rejectedByGlobal.increment();
+            return false;
+        }
+        accepted.increment();
+        return true;
+    }
+
+    private boolean tryAcquire(String name, Rate rate) {
+        LocalBucket bucket = buckets.computeIfAbsent(name, k -> new LocalBucket());
+        // 1.本地桶中有令牌，CAS扣减
+        if (bucket.tryTake()) {
+            return true;
+        }
+        // 2.redis桶刚刚为空，下一个令牌产生前直接拒绝
+        long now = System.currentTimeMillis();
+        if (now < bucket.emptyUntil) {
+            return false;
+        }
+        // 3.同一时刻只有一个线程去redis申请，其他线程短暂等待其结果后再从本地桶获取
+        CompletableFuture<Void> fetch = new CompletableFuture<>();
+        if (!bucket.fetching.compareAndSet(null, fetch)) {
+            return awaitFetch(bucket);
+        }
+        try {
+            long prefetch = Math.max(1, Math.min(properties.getPrefetch(), rate.getBurst()));
+            Long granted = luaScripts.execute("token_bucket", Long.class,
+                    Collections.singletonList(SECKILL_BUCKET_KEY + name), rate.getRate(), rate.getBurst(), prefetch);
+            if (granted != null && granted > 0) {
+                bucket.tokens.addAndGet(granted - 1);
+                return true;
+            }
+            bucket.emptyUntil = now + Math.max(1, 1000 / Math.max(1, rate.getRate()));
+            return false;
+        } catch (RuntimeException e) {
+            log.error("申请秒杀令牌失败：{}", name, e);
+            return false;
+        } finally {
+            bucket.fetching.set(null);
+            fetch.complete(null);
+        }
+    }
+
+    /**
+     * 等待正在进行的redis申请完成，再从本地桶获取令牌；超时或申请到的令牌已被取完时拒绝
+     */
+    private boolean awaitFetch(LocalBucket bucket) {
+        CompletableFuture<Void> inFlight = bucket.fetching.get();
+        if (inFlight != null) {
+            try {
+                inFlight.get(properties.getFetchWaitMillis(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException | TimeoutException e) {
+                return false;
+            }
+        }
+        return bucket.tryTake();
+    }
+
+    private static class LocalBucket {
+        // 已从redis预取、尚未发放的令牌
+        private final AtomicLong tokens = new AtomicLong();
+        // redis桶为空时，在该时间（毫秒时间戳）之前不再申请
+        private volatile long emptyUntil;
+        // 正在进行的redis申请，没有申请时为null
+        private final AtomicReference<CompletableFuture<Void>> fetching = new AtomicReference<>();
+
+        boolean tryTake() {
+            for (long t = tokens.get(); t > 0; t = tokens.get()) {
+                if (tokens.compareAndSet(t, t - 1)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,418 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.IVoucherOrderService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 秒杀订单消费者
+ * seckill.lua 扣减库存成功后把订单 XADD 到 stream.orders，这里以消费者组的方式读取并写入数据库：
+ * 1.每个实例启动多个消费者，XREADGROUP 按 COUNT 批量、BLOCK 阻塞读取，多个实例共同分担消息
+ * 2.订单事务提交后才 XACK，进程崩溃时未确认的消息保留在 pending-list 中
+ * 3.定时扫描 pending-list，把空闲超时的消息 XCLAIM 到本实例重新处理；超过最大投递次数的消息转入死信stream
+ * 4.微批：读到消息后继续攒批，直到满 batch-size 条或超过 linger-millis，再在一个事务中批量写库；批量失败时逐条重试
+ * 5.无法解析的消息直接转入死信stream
+ */
+@Slf4j
+@Component
+public class SeckillOrderConsumer {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+
+    @Value("${hmdp.seckill.consumer.enabled:true}")
+    private boolean enabled;
+
+    @Value("${hmdp.seckill.consumer.threads:4}")
+    private int threads;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    @Resource
+    private SeckillOrderStatus orderStatus;
+
+    @Value("${hmdp.seckill.consumer.batch-size:100}")
+    private int batchSize;
+
+    @Value("${hmdp.seckill.consumer.linger-millis:50}")
+    private long lingerMillis;
+
+    @Value("${hmdp.seckill.consumer.block-millis:2000}")
+    private long blockMillis;
+
+    @Value("${hmdp.seckill.consumer.pending-idle-millis:30000}")
+    private long pendingIdleMillis;
+
+    @Value("${hmdp.seckill.consumer.pending-scan-interval-millis:5000}")
+    private long pendingScanIntervalMillis;
+
+    @Value("${hmdp.seckill.consumer.max-deliveries:5}")
+    private long maxDeliveries;
+
+    // 消费者名称前缀，各实例之间必须唯一且重启后不变，重启后才能先处理自己遗留的pending消息；未配置时使用主机名
+    @Value("${hmdp.seckill.consumer.name:}")
+    private String consumerPrefix;
+
+    private ExecutorService consumers;
+
+    private final ScheduledExecutorService pendingScanner = Executors.newSingleThreadScheduledExecutor(
+            r -> new Thread(r, "seckill-order-pending"));
+
+    private volatile boolean running;
+
+    // 每批订单数量
+    private DistributionSummary batchSizeSummary;
+
+    // 批量写库耗时
+    private Timer persistTimer;
+
+    // 已写库的订单数
+    private Counter persistedCounter;
+
+    // 批量写库失败、退化为逐条处理的批次数
+    private Counter batchFallbackCounter;
+
+    // 逐条处理失败的订单数
+    private Counter failedCounter;
+
+    @PostConstruct
+    private void init() {
+        if (!enabled) {
+            return;
+        }
+        batchSizeSummary = DistributionSummary.builder("seckill.order.batch.size").register(meterRegistry);
+        persistTimer = Timer.builder("seckill.order.batch.persist").register(meterRegistry);
+        persistedCounter = meterRegistry.counter("seckill.order.persisted");
+        batchFallbackCounter = meterRegistry.counter("seckill.order.batch.fallback");
+        failedCounter = meterRegistry.counter("seckill.order.failed");
+        if (StrUtil.isBlank(consumerPrefix)) {
+            consumerPrefix = hostName();
+        }
+        createGroupIfAbsent();
+        running = true;
+        AtomicInteger index = new AtomicInteger();
+        consumers = Executors.newFixedThreadPool(threads,
+                r -> new Thread(r, "seckill-order-consumer-" + index.incrementAndGet()));
+        for (int i = 1; i <= threads; i++) {
+            String name = consumerPrefix + "-" + i;
+            consumers.execute(() -> consume(name));
+        }
+        pendingScanner.scheduleWithFixedDelay(this::recoverPending,
+                pendingScanIntervalMillis, pendingScanIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() throws InterruptedException {
+        running = false;
+        pendingScanner.shutdownNow();
+        if (consumers != null) {
+            // 等待正在处理的批次完成，阻塞读取最多持续blockMillis
+            consumers.shutdown();
+            consumers.awaitTermination(blockMillis * 2, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 创建消费者组，stream不存在时一并创建（XGROUP CREATE ... MKSTREAM）
+     */
+    private void createGroupIfAbsent() {
+        try {
+            stringRedisTemplate.execute((RedisCallback<String>) connection -> connection.streamCommands().xGroupCreate(
+                    SECKILL_ORDER_STREAM.getBytes(StandardCharsets.UTF_8), SECKILL_ORDER_GROUP, ReadOffset.from("0"), true));
+        } catch (RedisSystemException e) {
+            // BUSYGROUP：消费者组已存在
+            if (e.getMessage() == null || !e.getMessage().contains("BUSYGROUP")) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 消费者循环：先处理自己遗留的pending消息，再读取新消息
+     */
+    private void consume(String consumerName) {
+        Consumer consumer = Consumer.from(SECKILL_ORDER_GROUP, consumerName);
+        // 启动时按id顺序把本消费者已投递但未确认的消息处理一遍，之后只读取新消息；
+        // 这一遍仍未确认的消息（数据库异常、用户锁冲突）留给pending扫描认领重试，超过最大投递次数后转入死信
+        String drainFrom = "0";
+        while (running) {
+            try {
+                if (drainFrom != null) {
+                    List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().read(consumer,
+                            StreamReadOptions.empty().count(batchSize),
+                            StreamOffset.create(SECKILL_ORDER_STREAM, ReadOffset.from(drainFrom)));
+                    if (records == null || records.isEmpty()) {
+                        drainFrom = null;
+                        continue;
+                    }
+                    // 先推进游标，这一批处理失败也不会被重复读取
+                    drainFrom = records.get(records.size() - 1).getId().getValue();
+                    handleRecords(records);
+                    continue;
+                }
+                List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream().read(consumer,
+                        StreamReadOptions.empty().count(batchSize).block(Duration.ofMillis(blockMillis)),
+                        StreamOffset.create(SECKILL_ORDER_STREAM, ReadOffset.lastConsumed()));
+                if (records == null || records.isEmpty()) {
+                    continue;
+                }
+                handleRecords(linger(consumer, new ArrayList<>(records)));
+            } catch (Exception e) {
+                log.error("处理订单异常", e);
+                sleepQuietly();
+            }
+        }
+    }
+
+    /**
+     * 继续读取新消息攒批，直到满 batchSize 条或超过 lingerMillis
+     */
+    private List<MapRecord<String, Object, Object>> linger(Consumer consumer, List<MapRecord<String, Object, Object>> batch) {
+        long deadline = System.currentTimeMillis() + lingerMillis;
+        while (batch.size() < batchSize) {
+            long remaining = deadline - System.currentTimeMillis();
+            // BLOCK 0 表示一直阻塞，剩余时间不足1ms时直接结束
+            if (remaining < 1) {
+                break;
+            }
+            List<MapRecord<String, Object, Object>> more = stringRedisTemplate.opsForStream().read(consumer,
+                    StreamReadOptions.empty().count(batchSize - batch.size()).block(Duration.ofMillis(remaining)),
+                    StreamOffset.create(SECKILL_ORDER_STREAM, ReadOffset.lastConsumed()));
+            if (more == null || more.isEmpty()) {
+                break;
+            }
+            batch.addAll(more);
+        }
+        return batch;
+    }
+
+    /**
+     * 在一个事务中批量创建订单，成功后批量确认；批量失败时逐条处理，失败的消息不确认，留给pending扫描重试
+     */
+    private void handleRecords(List<MapRecord<String, Object, Object>> received) {
+        List<RecordId> acked = new ArrayList<>(received.size());
+        List<VoucherOrder> orders = new ArrayList<>(received.size());
+        List<MapRecord<String, Object, Object>> records = new ArrayList<>(received.size());
+        for (MapRecord<String, Object, Object> record : received) {
+            VoucherOrder order;
+            try {
+                order = toVoucherOrder(record.getValue());
+            } catch (Exception e) {
+                // 重试也无法解析，直接转入死信
+                log.error("订单消息无法解析，转入死信：{}", record.getValue(), e);
+                failedCounter.increment();
+                stringRedisTemplate.opsForStream().add(StreamRecords.newRecord()
+                        .in(SECKILL_ORDER_DEAD_LETTER_STREAM).ofMap(record.getValue()));
+                acked.add(record.getId());
+                continue;
+            }
+            orders.add(order);
+            records.add(record);
+        }
+        if (orders.isEmpty()) {
+            acknowledge(acked);
+            return;
+        }
+        batchSizeSummary.record(orders.size());
+        // 已处理完成的订单，用于更新订单状态
+        List<VoucherOrder> done = new ArrayList<>(orders.size());
+        Set<Long> persisted = new HashSet<>();
+        try {
+            persisted.addAll(persistTimer.recordCallable(() -> voucherOrderService.createVoucherOrders(orders)));
+            persistedCounter.increment(persisted.size());
+            records.forEach(record -> acked.add(record.getId()));
+            done.addAll(orders);
+        } catch (Exception e) {
+            log.warn("批量创建订单失败，逐条重试，批次大小：{}", orders.size(), e);
+            batchFallbackCounter.increment();
+            for (int i = 0; i < records.size(); i++) {
+                VoucherOrder order = orders.get(i);
+                try {
+                    Boolean created = handleVoucherOrder(order);
+                    if (created == null) {
+                        // 获取用户锁失败，不确认，稍后重试
+                        continue;
+                    }
+                    acked.add(records.get(i).getId());
+                    done.add(order);
+                    if (created) {
+                        persisted.add(order.getId());
+                        persistedCounter.increment();
+                    } else {
+                        failedCounter.increment();
+                    }
+                } catch (Exception ex) {
+                    failedCounter.increment();
+                    log.error("创建订单失败，消息id：{}", records.get(i).getId(), ex);
+                }
+            }
+        }
+        orderStatus.update(done, persisted);
+        acknowledge(acked);
+    }
+
+    private void acknowledge(List<RecordId> ids) {
+        if (!ids.isEmpty()) {
+            stringRedisTemplate.opsForStream().acknowledge(SECKILL_ORDER_STREAM, SECKILL_ORDER_GROUP,
+                    ids.toArray(new RecordId[0]));
+        }
+    }
+
+    /**
+     * 加用户锁后逐条创建订单
+     * @return 订单是否已写入数据库；获取锁失败、需要稍后重试时返回null
+     */
+    private Boolean handleVoucherOrder(VoucherOrder voucherOrder) {
+        // 1.获取用户
+        Long userId = voucherOrder.getUserId();
+        // 2.获取锁(可重入),自定义锁名称
+        RLock lock = redissonClient.getLock("lock:order:" + userId);
+        // 3.获取锁失败说明同一用户的订单正在处理，不确认消息，稍后重试
+        if (!lock.tryLock()) {
+            log.warn("用户{}的订单正在处理中，稍后重试", userId);
+            return null;
+        }
+        try {
+            // 通过代理对象调用，保证事务生效
+            return voucherOrderService.createVoucherOrder(voucherOrder);
+        } finally {
+            // 释放锁
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 扫描pending-list：空闲超时的消息认领到本实例重新处理，超过最大投递次数的消息转入死信stream
+     */
+    private void recoverPending() {
+        if (!running) {
+            return;
+        }
+        try {
+            String recoverer = consumerPrefix + "-recovery";
+            PendingMessages pending = stringRedisTemplate.opsForStream()
+                    .pending(SECKILL_ORDER_STREAM, SECKILL_ORDER_GROUP, Range.unbounded(), batchSize * 10L);
+            List<RecordId> retry = new ArrayList<>();
+            for (PendingMessage message : pending) {
+                if (message.getElapsedTimeSinceLastDelivery().toMillis() < pendingIdleMillis) {
+                    continue;
+                }
+                if (message.getTotalDeliveryCount() >= maxDeliveries) {
+                    deadLetter(message.getId(), recoverer);
+                } else {
+                    retry.add(message.getId());
+                }
+            }
+            if (retry.isEmpty()) {
+                return;
+            }
+            // XCLAIM 会增加投递次数，并且只认领仍然空闲超时的消息，多个实例同时扫描也只会有一个认领成功
+            List<MapRecord<String, Object, Object>> claimed = stringRedisTemplate.opsForStream().claim(
+                    SECKILL_ORDER_STREAM, SECKILL_ORDER_GROUP, recoverer,
+                    Duration.ofMillis(pendingIdleMillis), retry.toArray(new RecordId[0]));
+            if (!claimed.isEmpty()) {
+                log.info("认领pending订单消息{}条", claimed.size());
+                handleRecords(claimed);
+            }
+        } catch (Exception e) {
+            log.error("处理pending订单异常", e);
+        }
+    }
+
+    /**
+     * 认领消息后写入死信stream并确认
+     */
+    private void deadLetter(RecordId id, String recoverer) {
+        List<MapRecord<String, Object, Object>> claimed = stringRedisTemplate.opsForStream().claim(
+                SECKILL_ORDER_STREAM, SECKILL_ORDER_GROUP, recoverer, Duration.ofMillis(pendingIdleMillis), id);
+        for (MapRecord<String, Object, Object> record : claimed) {
+            log.error("订单消息超过最大投递次数，转入死信：{}", record.getValue());
+            try {
+                orderStatus.update(Collections.singletonList(toVoucherOrder(record.getValue())), Collections.emptySet());
+            } catch (Exception e) {
+                log.error("更新死信订单状态失败：{}", record.getValue(), e);
+            }
+            stringRedisTemplate.opsForStream().add(StreamRecords.newRecord()
+                    .in(SECKILL_ORDER_DEAD_LETTER_STREAM).ofMap(record.getValue()));
+            stringRedisTemplate.opsForStream().acknowledge(SECKILL_ORDER_STREAM, SECKILL_ORDER_GROUP, record.getId());
+        }
+    }
+
+    /**
+     * 解析订单消息，缺少订单id、用户id或券id时抛出异常
+     */
+    private static VoucherOrder toVoucherOrder(Map<Object, Object> value) {
+        VoucherOrder order = BeanUtil.fillBeanWithMap(value, new VoucherOrder(), true);
+        if (order.getId() == null || order.getUserId() == null || order.getVoucherId() == null) {
+            throw new IllegalArgumentException("订单消息缺少必要字段");
+        }
+        return order;
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException("无法获取主机名，请配置 hmdp.seckill.consumer.name", e);
+        }
+    }
+
+    private static void sleepQuietly() {
+        try {
+            Thread.sleep(50);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.SeckillOrderDTO;
+import com.hmdp.entity.VoucherOrder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 秒杀订单状态
+ * 每个订单一个key seckill:order:status:{orderId}，各自有存活时间，value为 状态码:用户id，状态码：
+ * 0 排队中（seckill.lua写入stream时同时写入，分片库存模式由markQueued写入），1 已创建，2 创建失败。只有下单用户本人可以查询订单状态。
+ * 消费者写库后更新状态并通过pub/sub广播，各实例完成等待该订单的长轮询请求。
+ */
+@Slf4j
+@Component
+public class SeckillOrderStatus {
+
+    public static final String QUEUED = "0";
+    public static final String PERSISTED = "1";
+    public static final String FAILED = "2";
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedisMessageListenerContainer listenerContainer;
+
+    // 长轮询的最长等待时间
+    @Value("${hmdp.seckill.order-status.max-wait-millis:30000}")
+    private long maxWaitMillis;
+
+    // 本实例上等待订单结果的长轮询请求
+    private final Map<Long, CopyOnWriteArrayList<Waiter>> waiters = new ConcurrentHashMap<>();
+
+    /**
+     * 订阅订单完成频道，消息格式：voucherId:orderId:状态码，多个订单以逗号分隔
+     */
+    @PostConstruct
+    private void subscribe() {
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            for (String item : StrUtil.split(body, ',')) {
+                String[] parts = item.split(":");
+                if (parts.length == 3) {
+                    complete(Long.valueOf(parts[0]), Long.valueOf(parts[1]), parts[2]);
+                }
+            }
+        }, new ChannelTopic(SECKILL_ORDER_DONE_CHANNEL));
+    }
+
+    /**
+     * 记录订单排队中，用于分片库存模式：下单脚本只访问一个分片所在的slot，由调用方在脚本成功后写入。
+     * 只在key不存在时写入，避免覆盖消费者已经写入的最终状态
+     * @param orderId
+     * @param userId 下单用户
+     */
+    public void markQueued(long orderId, Long userId) {
+        stringRedisTemplate.opsForValue().setIfAbsent(SECKILL_ORDER_STATUS_KEY + orderId, QUEUED + ":" + userId,
+                SECKILL_ORDER_STATUS_TTL, TimeUnit.HOURS);
+    }
+
+    /**
+     * 批量更新订单状态，并广播通知各实例
+     * @param orders 本批订单
+     * @param persisted 已写入数据库的订单id，其余订单记为失败
+     */
+    public void update(Collection<VoucherOrder> orders, Set<Long> persisted) {
+        if (orders.isEmpty()) {
+            return;
+        }
+        String message = orders.stream()
+                .map(order -> order.getVoucherId() + ":" + order.getId() + ":"
+                        + (persisted.contains(order.getId()) ? PERSISTED : FAILED))
+                .collect(Collectors.joining(","));
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (VoucherOrder order : orders) {
+                String status = persisted.contains(order.getId()) ? PERSISTED : FAILED;
+                conn.setEx(SECKILL_ORDER_STATUS_KEY + order.getId(), TimeUnit.HOURS.toSeconds(SECKILL_ORDER_STATUS_TTL),
+                        status + ":" + order.getUserId());
+            }
+            conn.publish(SECKILL_ORDER_DONE_CHANNEL, message);
+            return null;
+        });
+    }
+
+    /**
+     * 查询订单状态，订单仍在排队时挂起请求，直到订单写库完成或超时，期间不占用servlet线程
+     * @param voucherId
+     * @param orderId
+     * @param userId 当前用户，不是下单用户时按订单不存在处理
+     * @param waitMillis 最长等待时间，0表示立即返回
+     * @return
+     */
+    public DeferredResult<Result> await(Long voucherId, Long orderId, Long userId, long waitMillis) {
+        long timeout = Math.max(1, Math.min(waitMillis, maxWaitMillis));
+        // 超时时返回排队中
+        DeferredResult<Result> result = new DeferredResult<>(timeout, Result.ok(toDTO(voucherId, orderId, QUEUED)));
+        String status = query(orderId, userId);
+        if (status == null) {
+            result.setResult(Result.fail("订单不存在"));
+            return result;
+        }
+        if (!QUEUED.equals(status) || waitMillis <= 0) {
+            result.setResult(Result.ok(toDTO(voucherId, orderId, status)));
+            return result;
+        }
+        // 先登记再查询一次，避免在两次查询之间完成的通知丢失
+        Waiter waiter = new Waiter(voucherId, result);
+        waiters.computeIfAbsent(orderId, k -> new CopyOnWriteArrayList<>()).add(waiter);
+        result.onCompletion(() -> removeWaiter(orderId, waiter));
+        status = query(orderId, userId);
+        if (status != null && !QUEUED.equals(status)) {
+            result.setResult(Result.ok(toDTO(voucherId, orderId, status)));
+        }
+        return result;
+    }
+
+    /**
+     * 查询订单状态码，订单不存在或不属于该用户时返回null
+     */
+    private String query(Long orderId, Long userId) {
+        String value = stringRedisTemplate.opsForValue().get(SECKILL_ORDER_STATUS_KEY + orderId);
+        if (value == null) {
+            return null;
+        }
+        String[] parts = value.split(":");
+        if (parts.length != 2 || !parts[1].equals(String.valueOf(userId))) {
+            return null;
+        }
+        return parts[0];
+    }
+
+    private void complete(Long voucherId, Long orderId, String status) {
+        CopyOnWriteArrayList<Waiter> list = waiters.get(orderId);
+        if (list == null) {
+            return;
+        }
+        for (Waiter waiter : list) {
+            if (waiter.voucherId.equals(voucherId)) {
+                waiter.result.setResult(Result.ok(toDTO(voucherId, orderId, status)));
+            }
+        }
+    }
+
+    private void removeWaiter(Long orderId, Waiter waiter) {
+        waiters.computeIfPresent(orderId, (k, list) -> {
+            list.remove(waiter);
+            return list.isEmpty() ? null : list;
+        });
+    }
+
+    private static SeckillOrderDTO toDTO(Long voucherId, Long orderId, String status) {
+        String name = PERSISTED.equals(status) ? "PERSISTED" : FAILED.equals(status) ? "FAILED" : "QUEUED";
+        return new SeckillOrderDTO(orderId, voucherId, name);
+    }
+
+    private static class Waiter {
+        private final Long voucherId;
+        private final DeferredResult<Result> result;
+
+        Waiter(Long voucherId, DeferredResult<Result> result) {
+            this.voucherId = voucherId;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisZSetCommands.Limit;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 分片库存的下单消息转发
+ * 分片模式下单脚本只访问一个分片所在的slot，下单消息先写入该分片的发件箱 seckill:outbox:{voucherId:s}，
+ * 由本类定时转发到订单stream：先XADD到订单stream，再从发件箱XDEL。
+ * 两步之间崩溃时消息会被再次转发，消费者按(user_id, voucher_id)去重，重复投递不会重复下单。
+ * 同一时刻只有一个实例转发，秒杀结束且发件箱为空的优惠券不再转发。
+ */
+@Slf4j
+@Component
+public class SeckillOutboxRelay {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedissonClient redissonClient;
+
+    @Resource
+    private SeckillStockShards stockShards;
+
+    @Value("${hmdp.seckill.outbox.relay-interval-millis:50}")
+    private long relayIntervalMillis;
+
+    // 每个发件箱每次最多转发的消息数
+    @Value("${hmdp.seckill.outbox.batch-size:500}")
+    private int batchSize;
+
+    private final ScheduledExecutorService relayer = Executors.newSingleThreadScheduledExecutor(
+            r -> new Thread(r, "seckill-outbox-relay"));
+
+    @PostConstruct
+    private void init() {
+        relayer.scheduleWithFixedDelay(this::relay, relayIntervalMillis, relayIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        relayer.shutdownNow();
+    }
+
+    /**
+     * 转发所有分片优惠券的发件箱
+     */
+    public void relay() {
+        RLock lock = redissonClient.getLock(LOCK_SECKILL_OUTBOX_KEY);
+        try {
+            if (!lock.tryLock(0, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            Set<String> vouchers = stringRedisTemplate.opsForSet().members(SECKILL_SHARDED_KEY);
+            if (vouchers == null) {
+                return;
+            }
+            for (String id : vouchers) {
+                Long voucherId = Long.valueOf(id);
+                // 先判断是否结束再转发：结束后脚本不会再写入发件箱，本次转发为空即可移除
+                boolean ended = ended(voucherId);
+                int moved = 0;
+                int shards = stockShards.shardCount(voucherId);
+                for (int s = 0; s < shards; s++) {
+                    moved += relay(SeckillStockShards.outboxKey(voucherId, s));
+                }
+                if (moved == 0 && ended) {
+                    stringRedisTemplate.opsForSet().remove(SECKILL_SHARDED_KEY, id);
+                }
+            }
+        } catch (Exception e) {
+            log.error("转发秒杀下单消息失败，下个周期重试", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 转发一个发件箱中最早的一批消息
+     * @return 转发的消息数
+     */
+    private int relay(String outboxKey) {
+        List<MapRecord<String, Object, Object>> records = stringRedisTemplate.opsForStream()
+                .range(outboxKey, Range.unbounded(), Limit.limit().count(batchSize));
+        if (records == null || records.isEmpty()) {
+            return 0;
+        }
+        // 先写入订单stream，再从发件箱删除
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (MapRecord<String, Object, Object> record : records) {
+                Map<String, String> order = new HashMap<>();
+                record.getValue().forEach((k, v) -> order.put(k.toString(), v.toString()));
+                conn.xAdd(SECKILL_ORDER_STREAM, order);
+            }
+            return null;
+        });
+        String[] ids = records.stream().map(record -> record.getId().getValue()).toArray(String[]::new);
+        stringRedisTemplate.opsForStream().delete(outboxKey, ids);
+        return records.size();
+    }
+
+    /**
+     * 秒杀时间窗口是否已经结束，没有窗口信息时视为未结束
+     */
+    private boolean ended(Long voucherId) {
+        Object end = stringRedisTemplate.opsForHash().get(SeckillStockShards.windowKey(voucherId, 0), "end");
+        return end != null && Long.parseLong(end.toString()) < System.currentTimeMillis();
+    }
+}
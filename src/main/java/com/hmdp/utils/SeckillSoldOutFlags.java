@@ -0,0 +1,90 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_SOLD_OUT_CHANNEL;
+
+/**
+ * 秒杀券本地售罄标记
+ * 脚本返回库存不足后在本实例标记售罄，并通过pub/sub通知其他实例，之后的请求在进程内直接拒绝，不再访问redis；
+ * 补充库存时清除标记。pub/sub消息可能丢失，因此标记有存活时间，到期后重新由脚本判断。
+ * 消息格式：+voucherId 表示售罄，-voucherId 表示清除。
+ */
+@Slf4j
+@Component
+public class SeckillSoldOutFlags {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Value("${hmdp.seckill.sold-out-ttl-seconds:60}")
+    private long soldOutTtlSeconds;
+
+    // 优惠券id到标记过期时间（毫秒时间戳）
+    private final Map<Long, Long> soldOut = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    private void subscribe() {
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String body = new String(message.getBody(), StandardCharsets.UTF_8);
+            Long voucherId = Long.valueOf(body.substring(1));
+            if (body.charAt(0) == '+') {
+                soldOut.put(voucherId, expireAt());
+            } else {
+                soldOut.remove(voucherId);
+            }
+        }, new ChannelTopic(SECKILL_SOLD_OUT_CHANNEL));
+    }
+
+    /**
+     * 本实例是否已标记售罄
+     */
+    public boolean isSoldOut(Long voucherId) {
+        Long until = soldOut.get(voucherId);
+        if (until == null) {
+            return false;
+        }
+        if (until < System.currentTimeMillis()) {
+            soldOut.remove(voucherId, until);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 标记售罄并通知其他实例
+     */
+    public void markSoldOut(Long voucherId) {
+        if (soldOut.put(voucherId, expireAt()) == null) {
+            log.info("优惠券{}已售罄", voucherId);
+            stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, "+" + voucherId);
+        }
+    }
+
+    /**
+     * 清除售罄标记并通知其他实例
+     */
+    public void clear(Long voucherId) {
+        soldOut.remove(voucherId);
+        stringRedisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, "-" + voucherId);
+    }
+
+    private long expireAt() {
+        return System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(soldOutTtlSeconds);
+    }
+}
@@ -0,0 +1,228 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 秒杀库存分片
+ * 热门优惠券的库存拆分为K个子库存 seckill:stock:{voucherId:s}，下单用户集合、时间窗口和下单消息发件箱 seckill:outbox:{voucherId:s}
+ * 同样按分片拆分，同一分片的key使用同一个hash tag，不同分片分布在不同的slot上，每次脚本调用只访问一个slot。
+ * 1.用户按id哈希固定到一个分片，seckill_shard.lua 在该分片上校验一人一单并占住资格，有库存时扣减并写入本分片的发件箱；
+ * 2.所属分片库存不足时，seckill_take.lua 依次到其他分片扣减并写入该分片的发件箱，全部不足再释放资格；
+ *   扣减和写入发件箱在同一个脚本中完成，不会出现扣了库存却没有下单消息的情况；
+ * 3.{@link SeckillOutboxRelay} 把各分片发件箱中的消息转发到订单stream，由消费者创建订单。
+ * 本实例记录已扣完的分片，之后的请求不再到这些分片扣减；补充库存时清除。
+ * 分片数记录在 seckill:shards:{voucherId} 中，不存在表示未分片，沿用 seckill.lua；
+ * 各实例缓存分片数，重新创建优惠券或补充库存时通过pub/sub通知各实例清除。
+ */
+@Slf4j
+@Component
+public class SeckillStockShards {
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private LuaScriptRegistry luaScripts;
+
+    @Resource
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Resource
+    private SeckillOrderStatus orderStatus;
+
+    // 已扣完的分片记录的存活时间，与售罄标记一致
+    @Value("${hmdp.seckill.sold-out-ttl-seconds:60}")
+    private long emptyShardTtlSeconds;
+
+    // 优惠券id到分片数的本地缓存
+    private final Map<Long, Integer> shardCounts = new ConcurrentHashMap<>();
+
+    // 优惠券id到本实例发现已扣完的分片及记录的过期时间（毫秒时间戳）
+    private final Map<Long, Map<Integer, Long>> emptyShards = new ConcurrentHashMap<>();
+
+    /**
+     * 订阅分片数变更频道，消息为优惠券id
+     */
+    @PostConstruct
+    private void subscribe() {
+        listenerContainer.addMessageListener((message, pattern) -> {
+            Long voucherId = Long.valueOf(new String(message.getBody(), StandardCharsets.UTF_8));
+            shardCounts.remove(voucherId);
+            emptyShards.remove(voucherId);
+        }, new ChannelTopic(SECKILL_SHARDS_CHANNEL));
+    }
+
+    public static String stockKey(Long voucherId, int shard) {
+        return SECKILL_STOCK_KEY + "{" + voucherId + ":" + shard + "}";
+    }
+
+    public static String orderKey(Long voucherId, int shard) {
+        return SECKILL_ORDER_KEY + "{" + voucherId + ":" + shard + "}";
+    }
+
+    public static String windowKey(Long voucherId, int shard) {
+        return SECKILL_WINDOW_KEY + "{" + voucherId + ":" + shard + "}";
+    }
+
+    public static String outboxKey(Long voucherId, int shard) {
+        return SECKILL_OUTBOX_KEY + "{" + voucherId + ":" + shard + "}";
+    }
+
+    /**
+     * 秒杀时间窗口，脚本中用redis服务器时间与之比较
+     * @param beginTime
+     * @param endTime
+     * @return begin、end两个字段，值为毫秒时间戳
+     */
+    public static Map<String, String> window(LocalDateTime beginTime, LocalDateTime endTime) {
+        Map<String, String> window = new HashMap<>();
+        window.put("begin", String.valueOf(beginTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()));
+        window.put("end", String.valueOf(endTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()));
+        return window;
+    }
+
+    /**
+     * 把库存平均拆分到各分片，余数分给前几个分片，每个分片保存一份秒杀时间窗口
+     * @param voucherId
+     * @param stock
+     * @param shards 分片数，不超过库存数
+     * @param window 秒杀时间窗口
+     */
+    public void init(Long voucherId, int stock, int shards, Map<String, String> window) {
+        int count = Math.max(1, Math.min(shards, stock));
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (int s = 0; s < count; s++) {
+                int shardStock = stock / count + (s < stock % count ? 1 : 0);
+                conn.set(stockKey(voucherId, s), String.valueOf(shardStock));
+                conn.hMSet(windowKey(voucherId, s), window);
+            }
+            conn.set(SECKILL_SHARDS_KEY + voucherId, String.valueOf(count));
+            // 登记分片优惠券，由SeckillOutboxRelay转发其发件箱
+            conn.sAdd(SECKILL_SHARDED_KEY, voucherId.toString());
+            return null;
+        });
+        evict(voucherId);
+    }
+
+    /**
+     * 清除各实例缓存的分片数和已扣完的分片记录，下次使用时重新从redis读取
+     * @param voucherId
+     */
+    public void evict(Long voucherId) {
+        shardCounts.remove(voucherId);
+        emptyShards.remove(voucherId);
+        stringRedisTemplate.convertAndSend(SECKILL_SHARDS_CHANNEL, voucherId.toString());
+    }
+
+    /**
+     * 补充库存，平均加到各分片，余数加到前几个分片
+     * @param voucherId
+     * @param amount
+     * @param shards 分片数
+     */
+    public void replenish(Long voucherId, int amount, int shards) {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (int s = 0; s < shards; s++) {
+                int shardAmount = amount / shards + (s < amount % shards ? 1 : 0);
+                if (shardAmount > 0) {
+                    conn.incrBy(stockKey(voucherId, s), shardAmount);
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 查询优惠券的分片数，未分片时返回1
+     */
+    public int shardCount(Long voucherId) {
+        return shardCounts.computeIfAbsent(voucherId, id -> {
+            String value = stringRedisTemplate.opsForValue().get(SECKILL_SHARDS_KEY + id);
+            return StrUtil.isBlank(value) ? 1 : Integer.parseInt(value);
+        });
+    }
+
+    /**
+     * 分片库存模式下单，每次脚本调用只访问一个分片
+     * @param voucherId
+     * @param userId
+     * @param orderId
+     * @param shards 分片数
+     * @return 与seckill.lua一致：0成功，1库存不足，2重复下单，3尚未开始，4已经结束
+     */
+    public int seckill(Long voucherId, Long userId, long orderId, int shards) {
+        int home = Math.floorMod(Long.hashCode(userId), shards);
+        String homeOrderKey = orderKey(voucherId, home);
+        // 1.在所属分片上校验一人一单，占住资格，本分片有库存时扣减并写入发件箱
+        Long result = luaScripts.execute("seckill_shard", Long.class,
+                Arrays.asList(stockKey(voucherId, home), homeOrderKey, windowKey(voucherId, home), outboxKey(voucherId, home)),
+                userId.toString(), voucherId.toString(), String.valueOf(orderId));
+        int r = result.intValue();
+        if (r != 1) {
+            if (r == 0) {
+                orderStatus.markQueued(orderId, userId);
+            }
+            return r;
+        }
+        markEmpty(voucherId, home);
+        // 2.所属分片库存不足，依次到其他分片扣减，跳过本实例已知扣完的分片
+        for (int i = 1; i < shards; i++) {
+            int sibling = (home + i) % shards;
+            if (isEmpty(voucherId, sibling)) {
+                continue;
+            }
+            Long took = luaScripts.execute("seckill_take", Long.class,
+                    Arrays.asList(stockKey(voucherId, sibling), outboxKey(voucherId, sibling)),
+                    userId.toString(), voucherId.toString(), String.valueOf(orderId));
+            if (took == 0) {
+                orderStatus.markQueued(orderId, userId);
+                return 0;
+            }
+            markEmpty(voucherId, sibling);
+        }
+        // 3.所有分片都没有库存，释放一人一单的资格
+        stringRedisTemplate.opsForSet().remove(homeOrderKey, userId.toString());
+        return 1;
+    }
+
+    private void markEmpty(Long voucherId, int shard) {
+        emptyShards.computeIfAbsent(voucherId, k -> new ConcurrentHashMap<>())
+                .put(shard, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(emptyShardTtlSeconds));
+    }
+
+    private boolean isEmpty(Long voucherId, int shard) {
+        Map<Integer, Long> shards = emptyShards.get(voucherId);
+        Long until = shards == null ? null : shards.get(shard);
+        if (until == null) {
+            return false;
+        }
+        if (until < System.currentTimeMillis()) {
+            shards.remove(shard, until);
+            return false;
+        }
+        return true;
+    }
+}
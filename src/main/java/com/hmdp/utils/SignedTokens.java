@@ -0,0 +1,289 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.dto.LoginTokenDTO;
+import com.hmdp.dto.UserDTO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.LOGIN_REFRESH_KEY;
+import static com.hmdp.utils.RedisConstants.LOGIN_REVOKED_CHANNEL;
+import static com.hmdp.utils.RedisConstants.LOGIN_REVOKED_KEY;
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_TTL;
+
+/**
+ * 无状态的签名访问token（hmdp.login.mode=signed）
+ * 1.访问token = base64url(用户id、过期时间、token id、昵称、头像) + "." + base64url(HMAC-SHA256)，校验只在本地计算签名，不访问redis
+ * 2.登出的访问token在过期前记入redis有序集合 login:revoked（成员为token id，分数为过期时间），
+ *   各实例通过pub/sub和定时同步在本地保存一份，redis短暂不可用时校验仍然有效
+ * 3.刷新token为随机串，保存在redis login:refresh:{token} 中，值为用户id；使用一次即失效，换取新的一对token
+ */
+@Slf4j
+@Component
+public class SignedTokens implements TokenResolver {
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final byte VERSION = 1;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final RedisMessageListenerContainer listenerContainer;
+
+    private final boolean enabled;
+
+    private final String secret;
+
+    private final long accessTtlSeconds;
+
+    private final long revocationSyncMillis;
+
+    private final SecureRandom random = new SecureRandom();
+
+    private final ThreadLocal<Mac> macs = ThreadLocal.withInitial(this::newMac);
+
+    // 本地的注销列表：token id到其过期时间（秒）
+    private final Map<Long, Long> revoked = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "login-revocation-sync");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SignedTokens(StringRedisTemplate stringRedisTemplate,
+                        RedisMessageListenerContainer listenerContainer,
+                        @Value("${hmdp.login.mode:redis}") String mode,
+                        @Value("${hmdp.login.signed.secret:}") String secret,
+                        @Value("${hmdp.login.signed.access-ttl-seconds:900}") long accessTtlSeconds,
+                        @Value("${hmdp.login.signed.revocation-sync-millis:5000}") long revocationSyncMillis) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+        this.enabled = "signed".equalsIgnoreCase(mode);
+        this.secret = secret;
+        this.accessTtlSeconds = accessTtlSeconds;
+        this.revocationSyncMillis = revocationSyncMillis;
+    }
+
+    @PostConstruct
+    private void init() {
+        if (!enabled) {
+            return;
+        }
+        if (StrUtil.length(secret) < 32) {
+            throw new IllegalStateException("hmdp.login.signed.secret 至少需要32个字符");
+        }
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String[] parts = new String(message.getBody(), StandardCharsets.UTF_8).split(":");
+            revoked.put(Long.valueOf(parts[0]), Long.valueOf(parts[1]));
+        }, new ChannelTopic(LOGIN_REVOKED_CHANNEL));
+        syncer.scheduleWithFixedDelay(this::syncRevoked, 0, revocationSyncMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        syncer.shutdownNow();
+    }
+
+    /**
+     * 是否使用签名token
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 签发访问token和刷新token
+     * @param user
+     * @return
+     */
+    public LoginTokenDTO issue(UserDTO user) {
+        long expireAt = System.currentTimeMillis() / 1000 + accessTtlSeconds;
+        String refreshToken = ENCODER.encodeToString(randomBytes(24));
+        stringRedisTemplate.opsForValue().set(LOGIN_REFRESH_KEY + refreshToken, user.getId().toString(),
+                LOGIN_USER_TTL, TimeUnit.MINUTES);
+        return new LoginTokenDTO(sign(user, expireAt, random.nextLong()), refreshToken, accessTtlSeconds);
+    }
+
+    /**
+     * 校验签名、过期时间和注销列表，全部在本地完成
+     */
+    @Override
+    public UserDTO resolve(String token) {
+        AccessToken access = parse(token);
+        if (access == null || access.expireAt <= System.currentTimeMillis() / 1000 || revoked.containsKey(access.id)) {
+            return null;
+        }
+        return access.user;
+    }
+
+    /**
+     * 使用刷新token，成功后该刷新token立即失效
+     * @param refreshToken
+     * @return 对应的用户id，刷新token无效或已被使用时返回null
+     */
+    public Long consumeRefreshToken(String refreshToken) {
+        if (StrUtil.isBlank(refreshToken)) {
+            return null;
+        }
+        String key = LOGIN_REFRESH_KEY + refreshToken;
+        String userId = stringRedisTemplate.opsForValue().get(key);
+        // 并发刷新时只有删除成功的一方有效
+        if (userId == null || !Boolean.TRUE.equals(stringRedisTemplate.delete(key))) {
+            return null;
+        }
+        return Long.valueOf(userId);
+    }
+
+    /**
+     * 登出：注销访问token，删除刷新token
+     * @param token
+     * @param refreshToken
+     */
+    public void revoke(String token, String refreshToken) {
+        if (StrUtil.isNotBlank(refreshToken)) {
+            stringRedisTemplate.delete(LOGIN_REFRESH_KEY + refreshToken);
+        }
+        AccessToken access = parse(token);
+        if (access == null || access.expireAt <= System.currentTimeMillis() / 1000) {
+            return;
+        }
+        revoked.put(access.id, access.expireAt);
+        stringRedisTemplate.opsForZSet().add(LOGIN_REVOKED_KEY, access.id.toString(), access.expireAt);
+        stringRedisTemplate.convertAndSend(LOGIN_REVOKED_CHANNEL, access.id + ":" + access.expireAt);
+    }
+
+    /**
+     * 清理已过期的注销记录，并从redis同步完整的注销列表
+     */
+    private void syncRevoked() {
+        long now = System.currentTimeMillis() / 1000;
+        revoked.values().removeIf(expireAt -> expireAt <= now);
+        try {
+            stringRedisTemplate.opsForZSet().removeRangeByScore(LOGIN_REVOKED_KEY, 0, now);
+            Set<ZSetOperations.TypedTuple<String>> tuples = stringRedisTemplate.opsForZSet()
+                    .rangeByScoreWithScores(LOGIN_REVOKED_KEY, now + 1, Double.MAX_VALUE);
+            if (tuples == null) {
+                return;
+            }
+            for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+                if (tuple.getValue() != null && tuple.getScore() != null) {
+                    revoked.put(Long.valueOf(tuple.getValue()), tuple.getScore().longValue());
+                }
+            }
+        } catch (Exception e) {
+            // redis不可用时继续使用本地的注销列表
+            log.warn("同步注销的登录token失败：{}", e.getMessage());
+        }
+    }
+
+    private String sign(UserDTO user, long expireAt, long id) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeLong(user.getId());
+            out.writeLong(expireAt);
+            out.writeLong(id);
+            out.writeUTF(StrUtil.nullToEmpty(user.getNickName()));
+            out.writeUTF(StrUtil.nullToEmpty(user.getIcon()));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        String payload = ENCODER.encodeToString(bytes.toByteArray());
+        return payload + "." + ENCODER.encodeToString(hmac(payload));
+    }
+
+    private AccessToken parse(String token) {
+        if (!enabled || StrUtil.isBlank(token)) {
+            return null;
+        }
+        int dot = token.indexOf('.');
+        if (dot <= 0) {
+            return null;
+        }
+        String payload = token.substring(0, dot);
+        try {
+            byte[] signature = DECODER.decode(token.substring(dot + 1));
+            if (!MessageDigest.isEqual(signature, hmac(payload))) {
+                return null;
+            }
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(DECODER.decode(payload)))) {
+                if (in.readByte() != VERSION) {
+                    return null;
+                }
+                UserDTO user = new UserDTO();
+                user.setId(in.readLong());
+                long expireAt = in.readLong();
+                long id = in.readLong();
+                user.setNickName(StrUtil.emptyToNull(in.readUTF()));
+                user.setIcon(StrUtil.emptyToNull(in.readUTF()));
+                return new AccessToken(id, expireAt, user);
+            }
+        } catch (IllegalArgumentException | IOException e) {
+            // 格式不正确的token
+            return null;
+        }
+    }
+
+    private byte[] hmac(String payload) {
+        return macs.get().doFinal(payload.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static class AccessToken {
+        private final Long id;
+        private final long expireAt;
+        private final UserDTO user;
+
+        AccessToken(Long id, long expireAt, UserDTO user) {
+            this.id = id;
+            this.expireAt = expireAt;
+            this.user = user;
+        }
+    }
+}
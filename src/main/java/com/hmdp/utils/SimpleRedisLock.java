@@ -1,9 +1,7 @@
 package com.hmdp.utils;
 
 import cn.hutool.core.lang.UUID;
-import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.data.redis.core.script.DefaultRedisScript;
 
 import java.util.Collections;
 import java.util.concurrent.TimeUnit;
@@ -12,10 +10,13 @@ public class SimpleRedisLock implements ILock{
     // 模块名，与锁前缀拼接后就作为redis中的key
     private String name;
     private StringRedisTemplate stringRedisTemplate;
+    // 释放锁的unlock.lua由脚本注册中心预加载
+    private LuaScriptRegistry luaScripts;
 
-    public SimpleRedisLock(String name, StringRedisTemplate stringRedisTemplate) {
+    public SimpleRedisLock(String name, StringRedisTemplate stringRedisTemplate, LuaScriptRegistry luaScripts) {
         this.name = name;
         this.stringRedisTemplate = stringRedisTemplate;
+        this.luaScripts = luaScripts;
     }
 
     //redis中锁的前缀
@@ -26,24 +27,15 @@ public class SimpleRedisLock implements ILock{
 
     @Override
     public boolean tryLock(long timeoutSec) {
-        // 获取线程标示
-        Long threadId = Thread.currentThread().getId();
+        // 获取线程标示，与释放锁时比较的标示保持一致
+        String threadId = ID_PREFIX + Thread.currentThread().getId();
         // 获取锁
         Boolean success = stringRedisTemplate.opsForValue()
-                .setIfAbsent(KEY_PREFIX + name, threadId + "", timeoutSec, TimeUnit.SECONDS);
+                .setIfAbsent(KEY_PREFIX + name, threadId, timeoutSec, TimeUnit.SECONDS);
         return Boolean.TRUE.equals(success);
     }
 
 
-    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT;
-    //脚本初始化
-    static {
-        UNLOCK_SCRIPT = new DefaultRedisScript<>();
-        UNLOCK_SCRIPT.setLocation(new ClassPathResource("unlock.lua"));
-        UNLOCK_SCRIPT.setResultType(Long.class);
-    }
-
-
     @Override
     public void unlock() {
 //        // 获取线程标示
@@ -58,8 +50,8 @@ public class SimpleRedisLock implements ILock{
 //            stringRedisTemplate.delete(KEY_PREFIX+name);
 //        }
 
-        stringRedisTemplate.execute(
-                UNLOCK_SCRIPT,
+        luaScripts.execute(
+                "unlock", Long.class,
                 Collections.singletonList(KEY_PREFIX + name),
                 ID_PREFIX + Thread.currentThread().getId());
     }
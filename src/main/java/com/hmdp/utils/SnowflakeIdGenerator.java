@@ -0,0 +1,199 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.ID_WORKER_KEY;
+
+/**
+ * 雪花算法id生成器，生成id不访问redis
+ * id组成：符号位(1) + 标志位(1) + 毫秒时间戳(40) + workerId(10) + 序列号(12)
+ * RedisIdWorker的id为 秒级时间戳<<32 | 当天序列号，时间戳不超过30位时小于2^62；雪花id的标志位固定为1，
+ * 始终大于RedisIdWorker已经生成的id，两种生成器切换时订单主键不会冲突。
+ * workerId在启动时从redis租用（SET NX PX id:worker:{n}），定时续期；续期失败说明租约已被他人占用，重新租用新的workerId。
+ * 本地记录租约截止时间（最近一次成功续期的时间 + 租约时长 - 最大时钟偏差），redis不可达导致无法续期时，超过截止时间即停止生成id，
+ * 保证在租约过期、workerId可能被其他节点租用之前停止使用。释放租约时不直接删除key，而是保留最大时钟偏差的时长再过期。
+ * 时钟回拨不超过 maxBackwardMillis 时等待时钟追上，超过时拒绝生成id。
+ */
+@Slf4j
+public class SnowflakeIdGenerator implements IdGenerator, AutoCloseable {
+
+    // 开始时间戳（毫秒）
+    private static final long BEGIN_TIMESTAMP_MILLIS = 1711843200000L;
+
+    // 标志位，高于RedisIdWorker生成的id范围
+    private static final long SNOWFLAKE_FLAG = 1L << 62;
+
+    private static final int TIMESTAMP_BITS = 40;
+
+    private static final long MAX_TIMESTAMP = (1L << TIMESTAMP_BITS) - 1;
+
+    private static final int WORKER_BITS = 10;
+
+    private static final int SEQUENCE_BITS = 12;
+
+    private static final long MAX_WORKER_ID = (1L << WORKER_BITS) - 1;
+
+    private static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private final LuaScriptRegistry luaScripts;
+
+    // 租约持有者标识
+    private final String owner = UUID.randomUUID().toString(true);
+
+    private final long leaseMillis;
+
+    private final long maxBackwardMillis;
+
+    // 节点之间的最大时钟偏差
+    private final long maxClockSkewMillis;
+
+    private final ScheduledExecutorService renewer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "id-worker-lease");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // 当前租用的workerId，-1表示租约已失效
+    private volatile long workerId;
+
+    // 租约截止时间（System.nanoTime），超过后不再使用当前workerId
+    private volatile long leaseDeadline;
+
+    private long lastTimestamp = -1L;
+
+    private long sequence;
+
+    public SnowflakeIdGenerator(StringRedisTemplate stringRedisTemplate, LuaScriptRegistry luaScripts,
+                                long leaseMillis, long maxBackwardMillis, long maxClockSkewMillis) {
+        if (maxClockSkewMillis * 2 >= leaseMillis) {
+            throw new IllegalArgumentException("最大时钟偏差必须小于租约时长的一半");
+        }
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.luaScripts = luaScripts;
+        this.leaseMillis = leaseMillis;
+        this.maxBackwardMillis = maxBackwardMillis;
+        this.maxClockSkewMillis = maxClockSkewMillis;
+        this.workerId = lease();
+        long period = Math.max(1, leaseMillis / 3);
+        renewer.scheduleWithFixedDelay(this::renew, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized long nextId(String keyPrefix) {
+        long worker = workerId;
+        if (worker < 0 || System.nanoTime() - leaseDeadline > 0) {
+            throw new IllegalStateException("workerId租约已失效，暂时无法生成id");
+        }
+        long timestamp = System.currentTimeMillis();
+        if (timestamp < lastTimestamp) {
+            // 时钟回拨
+            long backward = lastTimestamp - timestamp;
+            if (backward > maxBackwardMillis) {
+                throw new IllegalStateException("时钟回拨" + backward + "ms，拒绝生成id");
+            }
+            timestamp = waitUntil(lastTimestamp);
+        }
+        if (timestamp == lastTimestamp) {
+            sequence = (sequence + 1) & MAX_SEQUENCE;
+            if (sequence == 0) {
+                // 当前毫秒的序列号用完，等待下一毫秒
+                timestamp = waitUntil(lastTimestamp + 1);
+            }
+        } else {
+            sequence = 0;
+        }
+        lastTimestamp = timestamp;
+        long elapsed = timestamp - BEGIN_TIMESTAMP_MILLIS;
+        if (elapsed > MAX_TIMESTAMP) {
+            throw new IllegalStateException("时间戳超出" + TIMESTAMP_BITS + "位，无法生成id");
+        }
+        return SNOWFLAKE_FLAG
+                | elapsed << (WORKER_BITS + SEQUENCE_BITS)
+                | worker << SEQUENCE_BITS
+                | sequence;
+    }
+
+    /**
+     * 从随机位置开始依次尝试租用workerId
+     */
+    private long lease() {
+        long start = ThreadLocalRandom.current().nextLong(MAX_WORKER_ID + 1);
+        for (long i = 0; i <= MAX_WORKER_ID; i++) {
+            long candidate = (start + i) & MAX_WORKER_ID;
+            long requestedAt = System.nanoTime();
+            Boolean success = stringRedisTemplate.opsForValue()
+                    .setIfAbsent(ID_WORKER_KEY + candidate, owner, leaseMillis, TimeUnit.MILLISECONDS);
+            if (Boolean.TRUE.equals(success)) {
+                extendDeadline(requestedAt);
+                log.info("租用workerId：{}", candidate);
+                return candidate;
+            }
+        }
+        throw new IllegalStateException("没有可用的workerId");
+    }
+
+    /**
+     * 续期租约，失败时重新租用
+     */
+    private void renew() {
+        try {
+            long worker = workerId;
+            if (worker >= 0) {
+                long requestedAt = System.nanoTime();
+                Long renewed = luaScripts.execute("lease_renew", Long.class,
+                        Collections.singletonList(ID_WORKER_KEY + worker), owner, leaseMillis);
+                if (renewed != null && renewed == 1) {
+                    extendDeadline(requestedAt);
+                    return;
+                }
+                log.warn("workerId{}的租约已失效，重新租用", worker);
+            }
+            // 先停止生成id，避免与新的持有者重复
+            workerId = -1;
+            workerId = lease();
+        } catch (Exception e) {
+            // 截止时间不变，到期后nextId拒绝生成id
+            log.error("续期workerId租约失败", e);
+        }
+    }
+
+    /**
+     * 以发起请求的时间计算截止时间，并预留最大时钟偏差：redis中的key过期、其他节点租用该workerId时，本节点已经停止生成id
+     */
+    private void extendDeadline(long requestedAt) {
+        leaseDeadline = requestedAt + TimeUnit.MILLISECONDS.toNanos(leaseMillis - maxClockSkewMillis);
+    }
+
+    private static long waitUntil(long target) {
+        long now = System.currentTimeMillis();
+        while (now < target) {
+            Thread.yield();
+            now = System.currentTimeMillis();
+        }
+        return now;
+    }
+
+    /**
+     * 停止续期并释放租约：租约缩短为最大时钟偏差，时钟偏慢的节点在此之后才能租用该workerId，不会生成与本节点重复的id
+     */
+    @Override
+    public void close() {
+        renewer.shutdownNow();
+        long worker = workerId;
+        workerId = -1;
+        if (worker >= 0) {
+            luaScripts.execute("lease_renew", Long.class, Collections.singletonList(ID_WORKER_KEY + worker),
+                    owner, Math.max(1, maxClockSkewMillis));
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.UserDTO;
+
+/**
+ * 根据请求头中的token解析当前登录用户
+ */
+public interface TokenResolver {
+
+    /**
+     * 解析token
+     * @param token
+     * @return token无效、已过期或已注销时返回null
+     */
+    UserDTO resolve(String token);
+}
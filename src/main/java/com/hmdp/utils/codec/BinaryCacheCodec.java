@@ -0,0 +1,482 @@
+package com.hmdp.utils.codec;
+
+import cn.hutool.core.convert.Convert;
+import cn.hutool.json.JSONUtil;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 紧凑的二进制编解码
+ * 格式：magic(1) + flags(1) + 逻辑过期时间(8) + schema指纹(4) + [重建耗时(4)] + 数据体
+ * 数据体按字段名排序后依次写入：null位图 + 各非空字段的值，整数使用zigzag变长编码，时间使用秒+纳秒表示；
+ * 字符串、数字等简单值以文本写入数据体，集合等其他非JavaBean的值整体以JSON写入数据体。
+ * 数据体超过阈值时使用Deflate压缩。schema指纹不一致或格式不识别时按未命中处理。
+ */
+@Slf4j
+public class BinaryCacheCodec implements CacheCodec {
+
+    private static final byte MAGIC = (byte) 0xB7;
+
+    private static final int FLAG_COMPRESSED = 1;
+
+    private static final int FLAG_JSON_BODY = 1 << 1;
+
+    private static final int FLAG_TEXT_BODY = 1 << 2;
+
+    private static final int FLAG_DELTA = 1 << 3;
+
+    private static final int HEADER_SIZE = 14;
+
+    // 解压后数据体的最大字节数，超过时视为数据损坏，避免按损坏的长度分配内存
+    private static final int MAX_INFLATED_SIZE = 16 * 1024 * 1024;
+
+    // 数据体超过该字节数时压缩
+    private final int compressThreshold;
+
+    private final ConcurrentHashMap<Class<?>, Schema> schemas = new ConcurrentHashMap<>();
+
+    public BinaryCacheCodec(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        return write(value, 0L, 0L);
+    }
+
+    @Override
+    public <R> R decode(byte[] bytes, Class<R> type) {
+        CacheEntry<R> entry = read(bytes, type);
+        return entry == null ? null : entry.getData();
+    }
+
+    @Override
+    public byte[] encodeWithExpire(Object value, long expireAt, long delta) {
+        return write(value, expireAt, delta);
+    }
+
+    @Override
+    public <R> CacheEntry<R> decodeWithExpire(byte[] bytes, Class<R> type) {
+        return read(bytes, type);
+    }
+
+    private byte[] write(Object value, long expireAt, long delta) {
+        Schema schema = schemaOf(value.getClass());
+        Sink sink = new Sink();
+        int flags = 0;
+        int fingerprint = 0;
+        if (value instanceof CharSequence || value instanceof Number || value instanceof Boolean) {
+            sink.writeString(value.toString());
+            flags |= FLAG_TEXT_BODY;
+        } else if (schema == null) {
+            sink.writeString(JSONUtil.toJsonStr(value));
+            flags |= FLAG_JSON_BODY;
+        } else {
+            schema.write(value, sink);
+            fingerprint = schema.fingerprint;
+        }
+        byte[] body = sink.toByteArray();
+        if (body.length >= compressThreshold) {
+            byte[] compressed = deflate(body);
+            if (compressed.length < body.length) {
+                body = compressed;
+                flags |= FLAG_COMPRESSED;
+            }
+        }
+        if (delta > 0) {
+            flags |= FLAG_DELTA;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + (delta > 0 ? 4 : 0) + body.length)
+                .put(MAGIC)
+                .put((byte) flags)
+                .putLong(expireAt)
+                .putInt(fingerprint);
+        if (delta > 0) {
+            buffer.putInt((int) Math.min(delta, Integer.MAX_VALUE));
+        }
+        return buffer.put(body).array();
+    }
+
+    private <R> CacheEntry<R> read(byte[] bytes, Class<R> type) {
+        if (bytes == null || bytes.length < HEADER_SIZE || bytes[0] != MAGIC) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.get();
+        int flags = buffer.get();
+        long expireAt = buffer.getLong();
+        int fingerprint = buffer.getInt();
+        try {
+            long delta = (flags & FLAG_DELTA) != 0 ? buffer.getInt() : 0L;
+            byte[] body = Arrays.copyOfRange(bytes, buffer.position(), bytes.length);
+            if ((flags & FLAG_COMPRESSED) != 0) {
+                body = inflate(body);
+            }
+            Source source = new Source(body);
+            R data;
+            if ((flags & FLAG_TEXT_BODY) != 0) {
+                data = Convert.convert(type, source.readString());
+            } else if ((flags & FLAG_JSON_BODY) != 0) {
+                data = JSONUtil.parse(source.readString()).toBean(type);
+            } else {
+                Schema schema = schemaOf(type);
+                if (schema == null || schema.fingerprint != fingerprint) {
+                    return null;
+                }
+                data = type.cast(schema.read(source));
+            }
+            // 数据体有剩余字节说明数据已损坏
+            if (!source.exhausted()) {
+                return null;
+            }
+            return new CacheEntry<>(data, expireAt, delta);
+        } catch (RuntimeException | DataFormatException e) {
+            log.warn("缓存数据解码失败，按未命中处理，type：{}", type.getName(), e);
+            return null;
+        }
+    }
+
+    private Schema schemaOf(Class<?> type) {
+        return schemas.computeIfAbsent(type, Schema::create).orNull();
+    }
+
+    private static byte[] deflate(byte[] body) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(body);
+            deflater.finish();
+            Sink sink = new Sink();
+            sink.writeVarLong(body.length);
+            byte[] chunk = new byte[Math.max(64, body.length / 2)];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(chunk);
+                sink.writeBytes(chunk, n);
+            }
+            return sink.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] body) throws DataFormatException {
+        Source source = new Source(body);
+        long size = source.readVarLong();
+        if (size < 0 || size > MAX_INFLATED_SIZE) {
+            throw new DataFormatException("解压后长度不合法：" + size);
+        }
+        byte[] out = new byte[(int) size];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(body, source.position, body.length - source.position);
+            int length = 0;
+            while (length < out.length && !inflater.finished()) {
+                int n = inflater.inflate(out, length, out.length - length);
+                if (n == 0 && inflater.needsInput()) {
+                    throw new DataFormatException("压缩数据不完整");
+                }
+                length += n;
+            }
+            return out;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * 字段类型
+     */
+    private enum Kind {
+        LONG, INT, SHORT, BYTE, DOUBLE, FLOAT, BOOLEAN, CHAR, STRING,
+        LOCAL_DATE_TIME, LOCAL_DATE, BIG_DECIMAL, ENUM, JSON;
+
+        static Kind of(Class<?> type) {
+            if (type == Long.class || type == long.class) return LONG;
+            if (type == Integer.class || type == int.class) return INT;
+            if (type == Short.class || type == short.class) return SHORT;
+            if (type == Byte.class || type == byte.class) return BYTE;
+            if (type == Double.class || type == double.class) return DOUBLE;
+            if (type == Float.class || type == float.class) return FLOAT;
+            if (type == Boolean.class || type == boolean.class) return BOOLEAN;
+            if (type == Character.class || type == char.class) return CHAR;
+            if (type == String.class) return STRING;
+            if (type == LocalDateTime.class) return LOCAL_DATE_TIME;
+            if (type == LocalDate.class) return LOCAL_DATE;
+            if (type == BigDecimal.class) return BIG_DECIMAL;
+            if (type.isEnum()) return ENUM;
+            return JSON;
+        }
+    }
+
+    /**
+     * 一个类的字段布局，字段按名称排序，保证各实例编码顺序一致
+     */
+    private static final class Schema {
+
+        private static final Schema UNSUPPORTED = new Schema(null, new Field[0], new Kind[0], 0);
+
+        private final Constructor<?> constructor;
+        private final Field[] fields;
+        private final Kind[] kinds;
+        private final int fingerprint;
+
+        private Schema(Constructor<?> constructor, Field[] fields, Kind[] kinds, int fingerprint) {
+            this.constructor = constructor;
+            this.fields = fields;
+            this.kinds = kinds;
+            this.fingerprint = fingerprint;
+        }
+
+        Schema orNull() {
+            return this == UNSUPPORTED ? null : this;
+        }
+
+        static Schema create(Class<?> type) {
+            if (type.isPrimitive() || type.isArray() || type.isEnum() || type.isInterface()
+                    || Modifier.isAbstract(type.getModifiers()) || Kind.of(type) != Kind.JSON
+                    || type.getName().startsWith("java.")) {
+                return UNSUPPORTED;
+            }
+            Constructor<?> constructor;
+            try {
+                constructor = type.getDeclaredConstructor();
+                constructor.setAccessible(true);
+            } catch (NoSuchMethodException | RuntimeException e) {
+                return UNSUPPORTED;
+            }
+            List<Field> fields = new ArrayList<>();
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    fields.add(field);
+                }
+            }
+            fields.sort(Comparator.comparing(Field::getName));
+            Kind[] kinds = new Kind[fields.size()];
+            StringBuilder signature = new StringBuilder(type.getName());
+            for (int i = 0; i < kinds.length; i++) {
+                Field field = fields.get(i);
+                kinds[i] = Kind.of(field.getType());
+                signature.append(';').append(field.getName()).append(':').append(field.getType().getName());
+            }
+            return new Schema(constructor, fields.toArray(new Field[0]), kinds, signature.toString().hashCode());
+        }
+
+        void write(Object value, Sink sink) {
+            Object[] values = new Object[fields.length];
+            byte[] nullBits = new byte[(fields.length + 7) / 8];
+            try {
+                for (int i = 0; i < fields.length; i++) {
+                    values[i] = fields[i].get(value);
+                    if (values[i] == null) {
+                        nullBits[i >> 3] |= (byte) (1 << (i & 7));
+                    }
+                }
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+            sink.writeBytes(nullBits, nullBits.length);
+            for (int i = 0; i < fields.length; i++) {
+                if (values[i] != null) {
+                    writeField(kinds[i], values[i], sink);
+                }
+            }
+        }
+
+        Object read(Source source) {
+            try {
+                Object value = constructor.newInstance();
+                byte[] nullBits = source.readBytes((fields.length + 7) / 8);
+                for (int i = 0; i < fields.length; i++) {
+                    if ((nullBits[i >> 3] & (1 << (i & 7))) != 0) {
+                        continue;
+                    }
+                    fields[i].set(value, readField(kinds[i], fields[i], source));
+                }
+                return value;
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private static void writeField(Kind kind, Object value, Sink sink) {
+            switch (kind) {
+                case LONG: sink.writeVarLong(zigzag((Long) value)); break;
+                case INT: sink.writeVarLong(zigzag((Integer) value)); break;
+                case SHORT: sink.writeVarLong(zigzag((Short) value)); break;
+                case BYTE: sink.writeByte((Byte) value); break;
+                case DOUBLE: sink.writeLong(Double.doubleToLongBits((Double) value)); break;
+                case FLOAT: sink.writeVarLong(Float.floatToIntBits((Float) value) & 0xFFFFFFFFL); break;
+                case BOOLEAN: sink.writeByte((Boolean) value ? 1 : 0); break;
+                case CHAR: sink.writeVarLong((Character) value); break;
+                case STRING: sink.writeString((String) value); break;
+                case LOCAL_DATE_TIME:
+                    LocalDateTime time = (LocalDateTime) value;
+                    sink.writeVarLong(zigzag(time.toEpochSecond(ZoneOffset.UTC)));
+                    sink.writeVarLong(time.getNano());
+                    break;
+                case LOCAL_DATE: sink.writeVarLong(zigzag(((LocalDate) value).toEpochDay())); break;
+                case BIG_DECIMAL: sink.writeString(((BigDecimal) value).toString()); break;
+                case ENUM: sink.writeString(((Enum<?>) value).name()); break;
+                default: sink.writeString(JSONUtil.toJsonStr(value));
+            }
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private static Object readField(Kind kind, Field field, Source source) {
+            switch (kind) {
+                case LONG: return unzigzag(source.readVarLong());
+                case INT: return (int) unzigzag(source.readVarLong());
+                case SHORT: return (short) unzigzag(source.readVarLong());
+                case BYTE: return source.readByte();
+                case DOUBLE: return Double.longBitsToDouble(source.readLong());
+                case FLOAT: return Float.intBitsToFloat((int) source.readVarLong());
+                case BOOLEAN: return source.readByte() != 0;
+                case CHAR: return (char) source.readVarLong();
+                case STRING: return source.readString();
+                case LOCAL_DATE_TIME:
+                    long seconds = unzigzag(source.readVarLong());
+                    return LocalDateTime.ofEpochSecond(seconds, (int) source.readVarLong(), ZoneOffset.UTC);
+                case LOCAL_DATE: return LocalDate.ofEpochDay(unzigzag(source.readVarLong()));
+                case BIG_DECIMAL: return new BigDecimal(source.readString());
+                case ENUM: return Enum.valueOf((Class<Enum>) field.getType(), source.readString());
+                default:
+                    Type genericType = field.getGenericType();
+                    return JSONUtil.toBean(source.readString(), genericType, false);
+            }
+        }
+
+        private static long zigzag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+
+        private static long unzigzag(long value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+
+    /**
+     * 可扩容的写缓冲
+     */
+    private static final class Sink {
+        private byte[] buf = new byte[128];
+        private int size;
+
+        private void ensure(int extra) {
+            if (size + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, size + extra));
+            }
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            buf[size++] = (byte) b;
+        }
+
+        void writeLong(long value) {
+            ensure(8);
+            for (int i = 7; i >= 0; i--) {
+                buf[size++] = (byte) (value >>> (i * 8));
+            }
+        }
+
+        void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buf[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[size++] = (byte) value;
+        }
+
+        void writeBytes(byte[] bytes, int length) {
+            ensure(length);
+            System.arraycopy(bytes, 0, buf, size, length);
+            size += length;
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            writeBytes(bytes, bytes.length);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, size);
+        }
+    }
+
+    /**
+     * 顺序读取
+     */
+    private static final class Source {
+        private final byte[] buf;
+        private int position;
+
+        Source(byte[] buf) {
+            this.buf = buf;
+        }
+
+        byte readByte() {
+            return buf[position++];
+        }
+
+        boolean exhausted() {
+            return position == buf.length;
+        }
+
+        long readLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (buf[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = buf[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalStateException("变长整数格式错误");
+        }
+
+        byte[] readBytes(int length) {
+            byte[] bytes = Arrays.copyOfRange(buf, position, position + length);
+            position += length;
+            return bytes;
+        }
+
+        String readString() {
+            int length = (int) readVarLong();
+            String value = new String(buf, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.hmdp.utils.codec;
+
+/**
+ * 缓存值的编解码器，CacheClient通过它在对象和redis中的字节之间转换
+ */
+public interface CacheCodec {
+
+    /**
+     * 编码普通缓存值
+     * @param value
+     * @return
+     */
+    byte[] encode(Object value);
+
+    /**
+     * 解码普通缓存值
+     * @param bytes
+     * @param type
+     * @return 数据格式不兼容时返回null，由调用方按未命中处理
+     * @param <R>
+     */
+    <R> R decode(byte[] bytes, Class<R> type);
+
+    /**
+     * 编码带逻辑过期时间的缓存值
+     * @param value
+     * @param expireAt 逻辑过期时间（毫秒时间戳）
+     * @return
+     */
+    default byte[] encodeWithExpire(Object value, long expireAt) {
+        return encodeWithExpire(value, expireAt, 0L);
+    }
+
+    /**
+     * 编码带逻辑过期时间和重建耗时的缓存值
+     * @param value
+     * @param expireAt 逻辑过期时间（毫秒时间戳）
+     * @param delta 重建耗时（毫秒）
+     * @return
+     */
+    byte[] encodeWithExpire(Object value, long expireAt, long delta);
+
+    /**
+     * 解码带逻辑过期时间的缓存值
+     * @param bytes
+     * @param type
+     * @return 数据格式不兼容时返回null，由调用方按未命中处理
+     * @param <R>
+     */
+    <R> CacheEntry<R> decodeWithExpire(byte[] bytes, Class<R> type);
+}
@@ -0,0 +1,31 @@
+package com.hmdp.utils.codec;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 反序列化后的缓存数据及其逻辑过期时间
+ * @param <R>
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CacheEntry<R> {
+    /**
+     * 缓存数据
+     */
+    private R data;
+    /**
+     * 逻辑过期时间（毫秒时间戳），0表示没有逻辑过期时间
+     */
+    private long expireAt;
+    /**
+     * 上一次重建该数据的耗时（毫秒），0表示未记录，用于概率提前过期
+     */
+    private long delta;
+
+    public CacheEntry(R data, long expireAt) {
+        this(data, expireAt, 0L);
+    }
+}
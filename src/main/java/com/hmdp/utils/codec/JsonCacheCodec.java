@@ -0,0 +1,54 @@
+package com.hmdp.utils.codec;
+
+import cn.hutool.json.JSONException;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.utils.RedisData;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * hutool JSON编解码，与原有的JSON字符串及RedisData格式兼容
+ */
+public class JsonCacheCodec implements CacheCodec {
+
+    @Override
+    public byte[] encode(Object value) {
+        return JSONUtil.toJsonStr(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <R> R decode(byte[] bytes, Class<R> type) {
+        try {
+            return JSONUtil.toBean(new String(bytes, StandardCharsets.UTF_8), type);
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public byte[] encodeWithExpire(Object value, long expireAt, long delta) {
+        RedisData redisData = new RedisData();
+        redisData.setExpireTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(expireAt), ZoneId.systemDefault()));
+        redisData.setData(value);
+        if (delta > 0) {
+            redisData.setDelta(delta);
+        }
+        return encode(redisData);
+    }
+
+    @Override
+    public <R> CacheEntry<R> decodeWithExpire(byte[] bytes, Class<R> type) {
+        RedisData redisData = decode(bytes, RedisData.class);
+        if (redisData == null || redisData.getExpireTime() == null || !(redisData.getData() instanceof JSONObject)) {
+            return null;
+        }
+        R data = JSONUtil.toBean((JSONObject) redisData.getData(), type);
+        long expireAt = redisData.getExpireTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long delta = redisData.getDelta() == null ? 0L : redisData.getDelta();
+        return new CacheEntry<>(data, expireAt, delta);
+    }
+}
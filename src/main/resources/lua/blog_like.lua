@@ -0,0 +1,43 @@
+-- 点赞/取消点赞
+-- KEYS[1]：博文的点赞用户集合 blog:liked:{blogId}，成员为用户id，分数为点赞时间
+-- KEYS[2]：待写入数据库的点赞数增量 hash，field为博文id
+-- KEYS[3]：热度排行 blog:hot
+-- KEYS[4]：博文的点赞数 hash blog:hot:likes
+-- KEYS[5]：博文的发布时间项 hash blog:hot:time
+-- ARGV[1]：用户id
+-- ARGV[2]：博文id
+-- ARGV[3]：当前时间（毫秒）
+-- ARGV[4]：热度排行保留的博文数
+local delta = 1
+if(redis.call('zscore', KEYS[1], ARGV[1])) then
+    -- 已点赞，取消点赞
+    redis.call('zrem', KEYS[1], ARGV[1])
+    delta = -1
+else
+    -- 未点赞，点赞
+    redis.call('zadd', KEYS[1], ARGV[3], ARGV[1])
+end
+redis.call('hincrby', KEYS[2], ARGV[2], delta)
+-- 重新计算热度分数：已在排行中的直接更新，不在排行中的分数超过排行最低分时重新加入
+local timeScore = redis.call('hget', KEYS[5], ARGV[2])
+if(timeScore) then
+    local likes = redis.call('hincrby', KEYS[4], ARGV[2], delta)
+    local score = math.log10(math.max(likes, 1)) + tonumber(timeScore)
+    if(redis.call('zscore', KEYS[3], ARGV[2])) then
+        redis.call('zadd', KEYS[3], score, ARGV[2])
+    else
+        local size = redis.call('zcard', KEYS[3])
+        local lowest = redis.call('zrange', KEYS[3], 0, 0, 'WITHSCORES')
+        if(size < tonumber(ARGV[4]) or score > tonumber(lowest[2])) then
+            redis.call('zadd', KEYS[3], score, ARGV[2])
+            if(size >= tonumber(ARGV[4])) then
+                redis.call('zremrangebyrank', KEYS[3], 0, 0)
+            end
+        end
+    end
+end
+-- 点赞返回1，取消点赞返回0
+if(delta == 1) then
+    return 1
+end
+return 0
@@ -0,0 +1,15 @@
+-- 布隆过滤器新增元素
+-- KEYS[1]：过滤器key
+-- KEYS[2]：正在重建的临时key集合
+-- KEYS[3]：重建期间新增元素的记录（stream）
+-- ARGV[1]：记录的有效期（秒）
+-- ARGV[2..]：元素对应的各个位下标
+for i = 2, #ARGV do
+    redis.call('setbit', KEYS[1], ARGV[i], 1)
+end
+-- 有实例正在重建时记录新增元素的位下标，替换前回放到临时key，避免丢失重建期间新增的元素
+if(redis.call('scard', KEYS[2]) > 0) then
+    redis.call('xadd', KEYS[3], '*', 'offsets', table.concat(ARGV, ',', 2))
+    redis.call('expire', KEYS[3], ARGV[1])
+end
+return 1
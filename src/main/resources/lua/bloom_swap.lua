@@ -0,0 +1,25 @@
+-- 重建完成，回放重建期间新增的元素后用临时key原子替换过滤器，并从正在重建的集合中移除
+-- KEYS[1]：过滤器key
+-- KEYS[2]：正在重建的临时key集合
+-- KEYS[3]：重建期间新增元素的记录（stream）
+-- KEYS[4]：临时key
+redis.call('srem', KEYS[2], KEYS[4])
+if(redis.call('exists', KEYS[4]) == 0) then
+    return 0
+end
+-- 回放全部记录：登记之前新增的元素也已写入过滤器，重复置位不影响正确性
+local records = redis.call('xrange', KEYS[3], '-', '+')
+for _, record in ipairs(records) do
+    local fields = record[2]
+    for offset in string.gmatch(fields[2], '[^,]+') do
+        redis.call('setbit', KEYS[4], offset, 1)
+    end
+end
+-- 没有其他实例在重建时清理记录
+if(redis.call('scard', KEYS[2]) == 0) then
+    redis.call('del', KEYS[3])
+end
+redis.call('rename', KEYS[4], KEYS[1])
+-- 临时key带有过期时间，rename后需要去掉
+redis.call('persist', KEYS[1])
+return 1
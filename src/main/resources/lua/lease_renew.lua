@@ -0,0 +1,8 @@
+-- 续期租约：只有租约仍属于自己时才延长过期时间
+-- KEYS[1]：租约key
+-- ARGV[1]：持有者标识
+-- ARGV[2]：租约时长（毫秒）
+if(redis.call('get', KEYS[1]) == ARGV[1]) then
+    return redis.call('pexpire', KEYS[1], ARGV[2])
+end
+return 0
@@ -5,16 +5,36 @@ local voucherId = ARGV[1]
 local userId = ARGV[2]
 -- 1.3.订单id
 local orderId = ARGV[3]
+-- 1.4.订单状态的存活时间（秒）
+local statusTtl = ARGV[4]
 
 -- 2.数据key
 -- 2.1.库存key
 local stockKey = 'seckill:stock:' .. voucherId
 -- 2.2.订单key
 local orderKey = 'seckill:order:' .. voucherId
+-- 2.3.秒杀时间窗口key
+local windowKey = 'seckill:window:' .. voucherId
+-- 2.4.订单状态key，每个订单一个key
+local statusKey = 'seckill:order:status:' .. orderId
 
 -- 3.脚本业务
+-- 3.0.判断是否在秒杀时间窗口内，没有窗口信息的旧数据不校验
+local window = redis.call('hmget', windowKey, 'begin', 'end')
+if(window[1]) then
+    local time = redis.call('time')
+    local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+    if(now < tonumber(window[1])) then
+        -- 尚未开始，返回3
+        return 3
+    end
+    if(now > tonumber(window[2])) then
+        -- 已经结束，返回4
+        return 4
+    end
+end
 -- 3.1.判断库存是否充足 get stockKey
-if(tonumber(redis.call('get', stockKey)) <= 0) then
+if(tonumber(redis.call('get', stockKey) or '0') <= 0) then
     -- 3.2.库存不足，返回1
     return 1
 end
@@ -29,4 +49,6 @@ redis.call('incrby', stockKey, -1)
 redis.call('sadd', orderKey, userId)
 -- 3.6.发送消息到队列中， XADD stream.orders * k1 v1 k2 v2 ...
 redis.call('xadd', 'stream.orders', '*', 'userId', userId, 'voucherId', voucherId, 'id', orderId)
+-- 3.7.记录订单状态为排队中及下单用户
+redis.call('set', statusKey, '0:' .. userId, 'EX', statusTtl)
 return 0
\ No newline at end of file
@@ -0,0 +1,46 @@
+-- 分片库存模式下在用户所属分片上下单，KEYS中的key使用同一个hash tag，位于同一个slot
+-- 1.参数列表
+-- 1.1.本分片的库存key
+local stockKey = KEYS[1]
+-- 1.2.本分片的下单用户key
+local orderKey = KEYS[2]
+-- 1.3.本分片的秒杀时间窗口key
+local windowKey = KEYS[3]
+-- 1.4.本分片的下单消息发件箱
+local outboxKey = KEYS[4]
+-- 1.5.用户id、优惠券id、订单id
+local userId = ARGV[1]
+local voucherId = ARGV[2]
+local orderId = ARGV[3]
+
+-- 2.判断是否在秒杀时间窗口内，没有窗口信息的旧数据不校验
+local window = redis.call('hmget', windowKey, 'begin', 'end')
+if(window[1]) then
+    local time = redis.call('time')
+    local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+    if(now < tonumber(window[1])) then
+        -- 尚未开始，返回3
+        return 3
+    end
+    if(now > tonumber(window[2])) then
+        -- 已经结束，返回4
+        return 4
+    end
+end
+
+-- 3.判断用户是否下过单
+if(redis.call('sismember', orderKey, userId) == 1) then
+    -- 存在，说明是重复下单，返回2
+    return 2
+end
+-- 4.先占住一人一单的资格，本分片库存不足时由调用方到其他分片扣减，全部失败再释放
+redis.call('sadd', orderKey, userId)
+-- 5.判断本分片库存是否充足
+if(tonumber(redis.call('get', stockKey) or '0') > 0) then
+    -- 6.扣减库存，下单消息写入本分片的发件箱，由SeckillOutboxRelay转发到订单stream
+    redis.call('incrby', stockKey, -1)
+    redis.call('xadd', outboxKey, '*', 'userId', userId, 'voucherId', voucherId, 'id', orderId)
+    return 0
+end
+-- 7.本分片库存不足，返回1
+return 1
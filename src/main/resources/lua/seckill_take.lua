@@ -0,0 +1,12 @@
+-- 分片库存模式下从其他分片扣减一个库存，KEYS中的key使用同一个hash tag，位于同一个slot
+-- KEYS[1]：分片库存key
+-- KEYS[2]：该分片的下单消息发件箱
+-- ARGV：用户id、优惠券id、订单id
+if(tonumber(redis.call('get', KEYS[1]) or '0') > 0) then
+    -- 扣减库存，下单消息写入该分片的发件箱
+    redis.call('incrby', KEYS[1], -1)
+    redis.call('xadd', KEYS[2], '*', 'userId', ARGV[1], 'voucherId', ARGV[2], 'id', ARGV[3])
+    return 0
+end
+-- 库存不足，返回1
+return 1
@@ -0,0 +1,27 @@
+-- 令牌桶，一次申请多个令牌
+-- KEYS[1]：令牌桶key，hash中保存剩余令牌数tokens和上次补充的时间ts（毫秒）
+-- ARGV[1]：每秒产生的令牌数
+-- ARGV[2]：桶容量
+-- ARGV[3]：申请的令牌数
+local key = KEYS[1]
+local rate = tonumber(ARGV[1])
+local capacity = tonumber(ARGV[2])
+local requested = tonumber(ARGV[3])
+
+-- 1.使用redis服务器时间，避免各实例时钟不一致
+local time = redis.call('time')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+
+-- 2.按流逝的时间补充令牌
+local bucket = redis.call('hmget', key, 'tokens', 'ts')
+local tokens = tonumber(bucket[1]) or capacity
+local ts = tonumber(bucket[2]) or now
+tokens = math.min(capacity, tokens + math.max(0, now - ts) * rate / 1000)
+
+-- 3.发放令牌，不足时发放剩余的整数个
+local granted = math.min(requested, math.floor(tokens))
+tokens = tokens - granted
+redis.call('hset', key, 'tokens', tokens, 'ts', now)
+-- 桶补满后不再需要保存
+redis.call('pexpire', key, math.ceil(capacity * 1000 / rate) + 1000)
+return granted
@@ -1,17 +1,36 @@
 package com.hmdp;
 
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IVoucherOrderService;
 import com.hmdp.service.impl.ShopServiceImpl;
+import com.hmdp.utils.CacheClient;
 import com.hmdp.utils.RedisIdWorker;
 import org.junit.jupiter.api.Test;
 import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.redis.core.StringRedisTemplate;
 
 import javax.annotation.Resource;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SpringBootTest
 public class HmDianPingApplicationTests {
@@ -25,6 +44,18 @@ public class HmDianPingApplicationTests {
     @Resource
     private RedissonClient redissonClient;
 
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Resource
+    private IVoucherOrderService voucherOrderService;
+
+    @Resource
+    private ISeckillVoucherService seckillVoucherService;
+
     private ExecutorService es = Executors.newFixedThreadPool(500);
 
     @Test
@@ -71,4 +102,136 @@ public class HmDianPingApplicationTests {
 
 
     }
+
+    /**
+     * single-flight：同一个key的并发未命中只查询一次数据库，所有请求都拿到结果
+     */
+    @Test
+    void testSingleFlightLoadsOnce() throws InterruptedException {
+        assertConcurrentMissLoadsOnce("test:sf:shop:", 50, (prefix, dbFallback) ->
+                cacheClient.queryWithSingleFlight(prefix, 1L, Shop.class, dbFallback, 1L, TimeUnit.MINUTES));
+    }
+
+    /**
+     * 数据库查询比重建锁的等待上限还慢时，等待者也不应超时失败或再次查询数据库
+     */
+    @Test
+    void testSingleFlightSlowLoad() throws InterruptedException {
+        assertConcurrentMissLoadsOnce("test:sf:slow:shop:", 1500, (prefix, dbFallback) ->
+                cacheClient.queryWithSingleFlight(prefix, 1L, Shop.class, dbFallback, 1L, TimeUnit.MINUTES));
+    }
+
+    /**
+     * 概率提前过期模式冷启动未命中时，同样只查询一次数据库
+     */
+    @Test
+    void testEarlyExpireColdMissLoadsOnce() throws InterruptedException {
+        assertConcurrentMissLoadsOnce("test:ee:shop:", 50, (prefix, dbFallback) ->
+                cacheClient.queryWithEarlyExpire(prefix, 1L, Shop.class, dbFallback, 1L, TimeUnit.MINUTES));
+    }
+
+    /**
+     * 重复投递的一批订单只创建一次：已存在订单按(user_id, voucher_id)精确匹配，唯一索引拒绝重复的用户和优惠券
+     */
+    @Test
+    void testCreateVoucherOrdersIsIdempotent() {
+        long base = redisIdWorker.nextId("test");
+        Long voucherA = base;
+        Long voucherB = base + 1;
+        seckillVoucherService.save(new SeckillVoucher().setVoucherId(voucherA).setStock(10));
+        seckillVoucherService.save(new SeckillVoucher().setVoucherId(voucherB).setStock(10));
+        try {
+            // 用户1已购买优惠券B，与下面的批次构成交叉组合，但不是批次中的订单
+            VoucherOrder earlier = new VoucherOrder().setId(base).setUserId(1L).setVoucherId(voucherB);
+            voucherOrderService.createVoucherOrders(Collections.singletonList(earlier));
+
+            List<VoucherOrder> batch = Arrays.asList(
+                    new VoucherOrder().setId(base + 1).setUserId(1L).setVoucherId(voucherA),
+                    new VoucherOrder().setId(base + 2).setUserId(2L).setVoucherId(voucherB));
+            HashSet<Long> expected = new HashSet<>(Arrays.asList(base + 1, base + 2));
+            assertEquals(expected, voucherOrderService.createVoucherOrders(batch));
+            // 重复投递
+            assertEquals(expected, voucherOrderService.createVoucherOrders(batch));
+
+            assertEquals(9, seckillVoucherService.getById(voucherA).getStock());
+            assertEquals(8, seckillVoucherService.getById(voucherB).getStock());
+            assertEquals(3, voucherOrderService.query().in("voucher_id", voucherA, voucherB).count());
+            // 同一用户同一优惠券的另一个订单
+            assertThrows(DuplicateKeyException.class, () -> voucherOrderService.save(
+                    new VoucherOrder().setId(base + 3).setUserId(2L).setVoucherId(voucherB)));
+        } finally {
+            voucherOrderService.update().in("voucher_id", voucherA, voucherB).remove();
+            seckillVoucherService.removeByIds(Arrays.asList(voucherA, voucherB));
+        }
+    }
+
+    /**
+     * 对比互斥锁和single-flight两种方式在缓存击穿时的数据库访问次数和尾延迟
+     */
+    @Test
+    void testSingleFlightVsMutex() throws InterruptedException {
+        long[] mutex = assertConcurrentMissLoadsOnce("bench:mutex:shop:", 50, (prefix, dbFallback) ->
+                cacheClient.queryWithMutex(prefix, 1L, Shop.class, dbFallback, 1L, TimeUnit.MINUTES));
+        long[] singleFlight = assertConcurrentMissLoadsOnce("bench:sf:shop:", 50, (prefix, dbFallback) ->
+                cacheClient.queryWithSingleFlight(prefix, 1L, Shop.class, dbFallback, 1L, TimeUnit.MINUTES));
+        report("mutex", mutex);
+        report("single-flight", singleFlight);
+    }
+
+    private static void report(String name, long[] latencies) {
+        Arrays.sort(latencies);
+        System.out.printf("%s: db loads = 1, p50 = %.1fms, p99 = %.1fms, max = %.1fms%n", name,
+                latencies[latencies.length / 2] / 1e6,
+                latencies[(int) (latencies.length * 0.99) - 1] / 1e6,
+                latencies[latencies.length - 1] / 1e6);
+    }
+
+    /**
+     * 200个线程同时未命中同一个key，断言只查询一次数据库且都拿到结果
+     * @return 每个请求的耗时（纳秒）
+     */
+    private long[] assertConcurrentMissLoadsOnce(String keyPrefix, long loadMillis,
+                                                 BiFunction<String, Function<Long, Shop>, Shop> query) throws InterruptedException {
+        int threads = 200;
+        stringRedisTemplate.delete(Arrays.asList(keyPrefix + 1, "lock:shop:1"));
+        AtomicInteger dbHits = new AtomicInteger();
+        AtomicInteger failures = new AtomicInteger();
+        // 模拟一次耗时的数据库查询
+        Function<Long, Shop> dbFallback = id -> {
+            dbHits.incrementAndGet();
+            try {
+                Thread.sleep(loadMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return new Shop().setId(id).setName("test");
+        };
+        long[] latencies = new long[threads];
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            int index = i;
+            es.submit(() -> {
+                try {
+                    start.await();
+                    long begin = System.nanoTime();
+                    Shop shop = query.apply(keyPrefix, dbFallback);
+                    latencies[index] = System.nanoTime() - begin;
+                    if (shop == null || !"test".equals(shop.getName())) {
+                        failures.incrementAndGet();
+                    }
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        start.countDown();
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(1, dbHits.get());
+        assertEquals(0, failures.get());
+        stringRedisTemplate.delete(keyPrefix + 1);
+        return latencies;
+    }
 }
@@ -0,0 +1,102 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RedisIdWorkerTest {
+
+    private static final int THREADS = 64;
+
+    private static final int IDS_PER_THREAD = 20_000;
+
+    @Test
+    void segmentModeIdsAreUnique() throws InterruptedException {
+        CounterTemplate counter = new CounterTemplate();
+        RedisIdWorker worker = new RedisIdWorker(counter, true, 1000, 0.8);
+
+        long[][] ids = new long[THREADS][IDS_PER_THREAD];
+        AtomicInteger failures = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(THREADS);
+        ExecutorService es = Executors.newFixedThreadPool(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            long[] out = ids[t];
+            es.submit(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < IDS_PER_THREAD; i++) {
+                        out[i] = worker.nextId("order");
+                    }
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        start.countDown();
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        es.shutdown();
+        assertEquals(0, failures.get());
+
+        long[] all = new long[THREADS * IDS_PER_THREAD];
+        for (int t = 0; t < THREADS; t++) {
+            System.arraycopy(ids[t], 0, all, t * IDS_PER_THREAD, IDS_PER_THREAD);
+        }
+        Arrays.sort(all);
+        for (int i = 1; i < all.length; i++) {
+            assertNotEquals(all[i - 1], all[i], "重复的id：" + all[i]);
+        }
+        // 每个号段申请一次，预取的号段最多浪费一段
+        assertTrue(counter.calls.get() <= all.length / 1000 + 2, "INCRBY次数：" + counter.calls.get());
+    }
+
+    @Test
+    void rejectsInvalidSegmentSettings() {
+        CounterTemplate counter = new CounterTemplate();
+        assertThrows(IllegalArgumentException.class, () -> new RedisIdWorker(counter, true, 0, 0.8));
+        assertThrows(IllegalArgumentException.class, () -> new RedisIdWorker(counter, true, 1000, 0));
+        assertThrows(IllegalArgumentException.class, () -> new RedisIdWorker(counter, true, 1000, 1));
+    }
+
+    /**
+     * 用内存计数器模拟redis的INCRBY，每次调用稍作延迟，让预取和同步申请号段交错执行
+     */
+    private static class CounterTemplate extends StringRedisTemplate {
+
+        private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @SuppressWarnings("unchecked")
+        private final ValueOperations<String, String> ops = (ValueOperations<String, String>) Proxy.newProxyInstance(
+                ValueOperations.class.getClassLoader(), new Class<?>[]{ValueOperations.class}, (proxy, method, args) -> {
+                    if (!method.getName().equals("increment")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    calls.incrementAndGet();
+                    Thread.sleep(1);
+                    long delta = args.length > 1 ? (Long) args[1] : 1L;
+                    return counters.computeIfAbsent((String) args[0], k -> new AtomicLong()).addAndGet(delta);
+                });
+
+        @Override
+        public ValueOperations<String, String> opsForValue() {
+            return ops;
+        }
+    }
+}
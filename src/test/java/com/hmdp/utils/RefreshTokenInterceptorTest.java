@@ -0,0 +1,77 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class RefreshTokenInterceptorTest {
+
+    private static final String TOKEN = "token-1";
+
+    private final MockMvc mockMvc = MockMvcBuilders.standaloneSetup(new TestController())
+            .addInterceptors(new RefreshTokenInterceptor(token -> TOKEN.equals(token) ? user() : null),
+                    new LoginInterceptor())
+            .build();
+
+    @AfterEach
+    void clear() {
+        UserHolder.removeUser();
+    }
+
+    /**
+     * 长轮询开始后同一线程上的下一个请求没有token，不能冒用上一个请求的用户
+     */
+    @Test
+    void tokenLessRequestAfterLongPollIsRejected() throws Exception {
+        mockMvc.perform(get("/poll").header("authorization", TOKEN))
+                .andExpect(request().asyncStarted());
+        assertNull(UserHolder.getUser());
+
+        mockMvc.perform(get("/me")).andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void tokenLessRequestAfterNormalRequestIsRejected() throws Exception {
+        mockMvc.perform(get("/me").header("authorization", TOKEN)).andExpect(status().isOk());
+        mockMvc.perform(get("/me")).andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void staleUserOnThreadIsCleared() throws Exception {
+        UserHolder.saveUser(user());
+        mockMvc.perform(get("/me")).andExpect(status().isUnauthorized());
+    }
+
+    private static UserDTO user() {
+        UserDTO user = new UserDTO();
+        user.setId(1L);
+        user.setNickName("user_1");
+        return user;
+    }
+
+    @RestController
+    static class TestController {
+
+        @GetMapping("/poll")
+        public DeferredResult<Result> poll() {
+            // 不设置结果，模拟仍在排队的订单
+            return new DeferredResult<>(60_000L);
+        }
+
+        @GetMapping("/me")
+        public Result me() {
+            return Result.ok(UserHolder.getUser().getId());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnowflakeIdGeneratorTest {
+
+    /**
+     * 从redis生成器切换到雪花生成器后，新id必须大于之前生成的所有id，不能与已有订单主键冲突
+     */
+    @Test
+    void snowflakeIdIsAboveEarlierRedisIds() {
+        StubTemplate template = new StubTemplate();
+        RedisIdWorker redisIdWorker = new RedisIdWorker(template, false, 1000, 0.8);
+        long redisId = redisIdWorker.nextId("order");
+        // 同一秒内序列号用到最大值的redis id
+        long maxRedisIdThisSecond = redisId | 0xFFFFFFFFL;
+
+        try (SnowflakeIdGenerator snowflake = new SnowflakeIdGenerator(template, new StubScripts(), 30_000, 5, 1000)) {
+            long snowflakeId = snowflake.nextId("order");
+            assertTrue(snowflakeId > redisId, snowflakeId + " <= " + redisId);
+            assertTrue(snowflakeId > maxRedisIdThisSecond, snowflakeId + " <= " + maxRedisIdThisSecond);
+            assertTrue(snowflake.nextId("order") > snowflakeId);
+        }
+    }
+
+    /**
+     * 租用workerId总是成功，INCR使用内存计数器
+     */
+    private static class StubTemplate extends StringRedisTemplate {
+
+        private final AtomicLong counter = new AtomicLong();
+
+        @SuppressWarnings("unchecked")
+        private final ValueOperations<String, String> ops = (ValueOperations<String, String>) Proxy.newProxyInstance(
+                ValueOperations.class.getClassLoader(), new Class<?>[]{ValueOperations.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "setIfAbsent":
+                            return Boolean.TRUE;
+                        case "increment":
+                            return counter.incrementAndGet();
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+
+        @Override
+        public ValueOperations<String, String> opsForValue() {
+            return ops;
+        }
+    }
+
+    /**
+     * 续期和释放租约总是成功
+     */
+    private static class StubScripts extends LuaScriptRegistry {
+
+        StubScripts() {
+            super(null, null);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T execute(String name, Class<T> resultType, List<String> keys, Object... args) {
+            return (T) Long.valueOf(1);
+        }
+    }
+}
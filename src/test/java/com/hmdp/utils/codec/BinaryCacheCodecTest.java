@@ -0,0 +1,181 @@
+package com.hmdp.utils.codec;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.Voucher;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryCacheCodecTest {
+
+    private static final int FLAGS_INDEX = 1;
+
+    private static final int FLAG_COMPRESSED = 1;
+
+    private static final int FLAG_DELTA = 1 << 3;
+
+    private final BinaryCacheCodec codec = new BinaryCacheCodec(256);
+
+    @Test
+    void roundTripBean() {
+        Shop shop = sampleShop("102茶餐厅");
+        Shop decoded = codec.decode(codec.encode(shop), Shop.class);
+        assertEquals(shop, decoded);
+    }
+
+    @Test
+    void roundTripBeanWithNullFields() {
+        Shop shop = new Shop().setId(7L).setName("only name");
+        Shop decoded = codec.decode(codec.encode(shop), Shop.class);
+        assertEquals(shop, decoded);
+        assertNull(decoded.getCreateTime());
+        assertNull(decoded.getX());
+    }
+
+    @Test
+    void roundTripSimpleValues() {
+        assertEquals("hello 你好", codec.decode(codec.encode("hello 你好"), String.class));
+        assertEquals(Long.valueOf(-42L), codec.decode(codec.encode(-42L), Long.class));
+        assertEquals(Boolean.TRUE, codec.decode(codec.encode(true), Boolean.class));
+    }
+
+    @Test
+    void roundTripJsonBody() {
+        List<?> decoded = codec.decode(codec.encode(Arrays.asList(1, 2, 3)), List.class);
+        assertEquals(3, decoded.size());
+    }
+
+    @Test
+    void roundTripWithExpire() {
+        Shop shop = sampleShop("逻辑过期");
+        long expireAt = System.currentTimeMillis() + 60_000;
+        byte[] bytes = codec.encodeWithExpire(shop, expireAt);
+        assertEquals(0, bytes[FLAGS_INDEX] & FLAG_DELTA);
+        CacheEntry<Shop> entry = codec.decodeWithExpire(bytes, Shop.class);
+        assertEquals(shop, entry.getData());
+        assertEquals(expireAt, entry.getExpireAt());
+        assertEquals(0L, entry.getDelta());
+    }
+
+    @Test
+    void roundTripWithDelta() {
+        Shop shop = sampleShop("提前过期");
+        long expireAt = System.currentTimeMillis() + 60_000;
+        byte[] withoutDelta = codec.encodeWithExpire(shop, expireAt, 0L);
+        byte[] withDelta = codec.encodeWithExpire(shop, expireAt, 37L);
+        assertNotEquals(0, withDelta[FLAGS_INDEX] & FLAG_DELTA);
+        assertEquals(withoutDelta.length + 4, withDelta.length);
+        CacheEntry<Shop> entry = codec.decodeWithExpire(withDelta, Shop.class);
+        assertEquals(shop, entry.getData());
+        assertEquals(expireAt, entry.getExpireAt());
+        assertEquals(37L, entry.getDelta());
+    }
+
+    @Test
+    void smallValueIsNotCompressed() {
+        byte[] bytes = codec.encode(sampleShop("small"));
+        assertEquals(0, bytes[FLAGS_INDEX] & FLAG_COMPRESSED);
+    }
+
+    @Test
+    void largeValueIsCompressed() {
+        Shop shop = sampleShop("large");
+        shop.setImages(repeat("https://qcloud.dpfile.com/pc/image.jpg,", 50));
+        byte[] bytes = codec.encode(shop);
+        assertNotEquals(0, bytes[FLAGS_INDEX] & FLAG_COMPRESSED);
+        assertTrue(bytes.length < shop.getImages().length());
+        assertEquals(shop, codec.decode(bytes, Shop.class));
+
+        CacheEntry<Shop> entry = codec.decodeWithExpire(codec.encodeWithExpire(shop, 123L, 5L), Shop.class);
+        assertEquals(shop, entry.getData());
+        assertEquals(5L, entry.getDelta());
+    }
+
+    @Test
+    void nullMarkerAndMissDecodeToNull() {
+        // CacheClient以空字节数组作为空值标记
+        assertNull(codec.decode(new byte[0], Shop.class));
+        assertNull(codec.decode(null, Shop.class));
+        assertNull(codec.decodeWithExpire(new byte[0], Shop.class));
+    }
+
+    @Test
+    void rejectsForeignBytes() {
+        byte[] json = new JsonCacheCodec().encode(sampleShop("json"));
+        assertNull(codec.decode(json, Shop.class));
+        assertNull(codec.decode("plain text value".getBytes(StandardCharsets.UTF_8), Shop.class));
+    }
+
+    @Test
+    void rejectsOtherSchema() {
+        byte[] bytes = codec.encode(sampleShop("shop"));
+        assertNull(codec.decode(bytes, Voucher.class));
+    }
+
+    @Test
+    void rejectsTruncatedBytes() {
+        byte[] bytes = codec.encode(sampleShop("truncated"));
+        for (int length = 1; length < bytes.length; length++) {
+            assertNull(codec.decode(Arrays.copyOf(bytes, length), Shop.class), "length " + length);
+        }
+    }
+
+    @Test
+    void rejectsCorruptBody() {
+        byte[] bytes = codec.encode(sampleShop("corrupt"));
+        for (int i = 14; i < bytes.length; i++) {
+            bytes[i] = (byte) 0xFF;
+        }
+        assertNull(codec.decode(bytes, Shop.class));
+    }
+
+    @Test
+    void rejectsCorruptCompressedBody() {
+        Shop shop = sampleShop("compressed");
+        shop.setImages(repeat("abcdefgh", 100));
+        byte[] bytes = codec.encode(shop);
+        assertNotEquals(0, bytes[FLAGS_INDEX] & FLAG_COMPRESSED);
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length - 8);
+        assertNull(codec.decode(truncated, Shop.class));
+
+        // 声明的解压后长度异常大时不分配内存
+        byte[] header = Arrays.copyOf(bytes, 14);
+        byte[] hugeLength = ByteBuffer.allocate(14 + 5).put(header)
+                .put((byte) 0xFF).put((byte) 0xFF).put((byte) 0xFF).put((byte) 0xFF).put((byte) 0x07)
+                .array();
+        assertNull(codec.decode(hugeLength, Shop.class));
+    }
+
+    private static Shop sampleShop(String name) {
+        return new Shop()
+                .setId(1L)
+                .setName(name)
+                .setTypeId(1L)
+                .setImages("https://qcloud.dpfile.com/pc/a.jpg")
+                .setArea("大关")
+                .setAddress("金华路锦昌文华苑29号")
+                .setX(120.149192)
+                .setY(30.316078)
+                .setAvgPrice(80L)
+                .setSold(4215)
+                .setComments(3035)
+                .setScore(37)
+                .setOpenHours("10:00-22:00")
+                .setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39))
+                .setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19, 123_000_000));
+    }
+
+    private static String repeat(String value, int times) {
+        StringBuilder builder = new StringBuilder(value.length() * times);
+        for (int i = 0; i < times; i++) {
+            builder.append(value);
+        }
+        return builder.toString();
+    }
+}